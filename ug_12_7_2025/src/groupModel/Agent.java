@@ -8,9 +8,8 @@ package groupModel;
 import sim.engine.SimState;
 import sim.engine.Steppable;
 import sim.engine.Stoppable;
-import sim.field.grid.SparseGrid2D;
+import sim.engine.TentativeStep;
 import sim.util.Bag;
-import sim.util.Double2D;
 import sim.util.Int2D;
 import sim.util.IntBag;
 import sim.util.distribution.Uniform;
@@ -37,14 +36,14 @@ import sim.util.distribution.Uniform;
 public class Agent implements Steppable {
 	int x; //x location of group
 	int y; //y location of group
-	int age; //current age of agent
-	int maxAge;//maximum age of agent
-	double resources=0;
-	double endowment=0;//store the endowment each step when dictator
-	double offer =0;//amount offered, 0 ≤ offer ≤ 1
-	double accept = 0.0; //for the ultimatum game
+	AgentStore store;//holds age, maxAge, resources, endowment and reproductiveCount
+	int slot;//row of the agent in the store, -1 once it has died
 	double currentOffer = 0.0;
-	double reproductiveCount = 0;//counts down minimum delay
+	short offerIndex;//index of offer in the offer array
+	short acceptIndex;//index of accept in the offer array
+	long id;//identifies the agent in the event trace
+	Lineage lineage = null;//node of the agent in the genealogy, if lineages are tracked
+	int mateSlot;//position of the agent among the members of its group with its offer, for assortative mating
 	double io; //resources required to reproduce
 	double ibiTau;//minimum length of gestation
 	public Group group;//the group the agent is currently a member
@@ -52,12 +51,10 @@ public class Agent implements Steppable {
 	/* Variables used for calculations*/
 	Environment state;//store access to the environment
 	public Stoppable event;//allows the removal of an agent from the schedule
-	IntBag xPos = new IntBag();//used for finding locations
-	IntBag yPos = new IntBag();//used for finding locations
-	Bag locations = new Bag();//used for finding locations
-	Bag groups = new Bag();//used for storing groups
 	double offspring = 0.0; //for counting offspring successfully produced
 	Uniform uniform = null;
+	long syncTick = 0;//event driven mode: tick at which age and reproductiveCount are up to date
+	long eventTick = Long.MAX_VALUE;//event driven mode: tick of the next scheduled step
 
 
 
@@ -70,11 +67,67 @@ public class Agent implements Steppable {
 	}
 	
 	public double getResourceTN (Environment state) {
-		return this.endowment = state.tnormal.nextTN();
+		final double endowment = state.tnormal.nextTN();
+		store.setEndowment(slot, endowment);
+		return endowment;
 	}
 
 	public double getResourceU (Environment state) {
-		return this.endowment = uniform.nextDouble();
+		final double endowment = uniform.nextDouble();
+		store.setEndowment(slot, endowment);
+		return endowment;
+	}
+
+	public int getAge() {
+		return store.getAge(slot);
+	}
+
+	public int getMaxAge() {
+		return store.getMaxAge(slot);
+	}
+
+	public double getResources() {
+		return store.getResources(slot);
+	}
+
+	public void setResources(double resources) {
+		store.setResources(slot, resources);
+	}
+
+	/**
+	 * Adds to the resources of the agent.
+	 * @param gain
+	 */
+	public void addResources(double gain) {
+		store.setResources(slot, store.getResources(slot) + gain);
+	}
+
+	public double getEndowment() {
+		return store.getEndowment(slot);
+	}
+
+	public void setEndowment(double endowment) {
+		store.setEndowment(slot, endowment);
+	}
+
+	public double getOffer() {
+		return state.offerArray[offerIndex];
+	}
+
+	public double getAccept() {
+		return state.offerArray[acceptIndex];
+	}
+
+	public double getReproductiveCount() {
+		return store.getReproductiveCount(slot);
+	}
+
+	/**
+	 * False once the agent has died and its slot may belong to another agent.
+	 * @return
+	 */
+	public boolean isAlive() {
+		return slot >= 0;
 	}
 
 	/**
@@ -92,18 +145,23 @@ public class Agent implements Steppable {
 		this.state = state;
 		this.x = x;
 		this.y = y;
-		this.resources = resources;
-		this.offer = offer;
-		this.accept = accept;
+		this.store = state.agents;
+		this.slot = store.allocate();
+		store.setResources(slot, resources);
+		store.setEndowment(slot, 0);
+		store.setReproductiveCount(slot, 0);
+		this.offerIndex = state.offerIndex(offer);
+		this.acceptIndex = state.offerIndex(accept);
+		this.id = state.nextAgentId++;
 		this.uniform = state.uniform;
 
-		maxAge = (int)(state.averageAge + state.random.nextGaussian()*state.sdAge*state.averageAge); //percent of average age
-		// set the maximum age
+		final int maxAge = (int)(state.averageAge + state.random.nextGaussian()*state.sdAge*state.averageAge); //percent of average age
+		store.setMaxAge(slot, maxAge);// set the maximum age
 		if(startup) {
-			age = state.random.nextInt(maxAge);
+			store.setAge(slot, state.random.nextInt(maxAge));
 			//if at startup, set the initial age in the uniform random distribution between 0 and maxAge
 		} else {
-			age = 0;//if not startup, initial age is 0s
+			store.setAge(slot, 0);//if not startup, initial age is 0s
 		}
 
 
@@ -126,26 +184,30 @@ public class Agent implements Steppable {
 		return n;
 	}
 
-	public Double2D chromosome(Environment state) {
+	/**
+	 * The strategy passed on to an offspring before mutation, as offer index * offer levels
+	 * + accept index.
+	 * @param state
+	 * @return -1 if there is no mate
+	 */
+	public int chromosome(Environment state) {
+		final int levels = state.offerArray.length;
 		if(state.sex) {
 			if(this.group.members.numObjs < 2) {//get mate from cluster
 				System.out.println("Singleton Sex");
 				groupDisperse(this.state);
-				return null;
-			}
-			Agent mate = (Agent)this.group.members.objs[state.random.nextInt(this.group.members.numObjs)];
-			while(!this.equals(mate)) {
-				mate = (Agent)this.group.members.objs[state.random.nextInt(this.group.members.numObjs)];
+				return -1;
 			}
+			Agent mate = state.mates.mate(state.random, this);
 			if(state.random.nextBoolean(0.5)) {
-				return new Double2D(this.offer, mate.accept);
+				return offerIndex * levels + mate.acceptIndex;
 			} else
 			{
-				return new Double2D(mate.offer, this.accept);
+				return mate.offerIndex * levels + acceptIndex;
 			}
 		}
 		else {
-			return new Double2D(this.offer, this.accept);//asexual reproduction
+			return offerIndex * levels + acceptIndex;//asexual reproduction
 		}
 	}
 
@@ -159,15 +221,15 @@ public class Agent implements Steppable {
 		if (state.maxN <= countAgents(state)) {//test for number of agents
 			ibiTau = state.ibiTau;//reset the gestationPeriod to the base rate
 			if(state.carryOver)
-				resources -=  io;//truncate resources
+				addResources(-io);//truncate resources
 			else
-				resources = 0.0;
+				setResources(0.0);
 			return null;//No agent was created, to return null and agent starts over
 		}
 		Group g=null; //offspring's  group
 		boolean dispersed = false;
-		if(state.random.nextBoolean(state.dispersalRate)) {
-			g = findGroupLocal( state,x, y, state.sparseSpace.TOROIDAL, searchRadius, false);
+		if(state.dispersal.next(state.random, state.dispersalRate)) {
+			g = findGroupLocal( state,x, y, searchRadius, false);
 			//finds a random group within the parent group's search radius
 			if (g == null) {//if there isn't one, set the group to the parent group
 				g = this.group;
@@ -179,68 +241,69 @@ public class Agent implements Steppable {
 			g = this.group;//set offspring group to the parent group
 		}
 
-		Double2D b = mutationStrategies(state);
-		if(b == null) {
+		final int strategy = mutationStrategies(state);
+		if(strategy < 0) {
 			return null; //only could happen for sex
 		}
 		state.experimenter.recordDispersion(dispersed);
-		double offer = b.x;
-		double accept = b.y;
+		double offer = state.offerArray[strategy / state.offerArray.length];
+		double accept = state.offerArray[strategy % state.offerArray.length];
 		if(state.carryOver)
-			resources -=  io;//truncate resources
+			addResources(-io);//truncate resources
 		else
-			resources = 0.0;
+			setResources(0.0);
 		double offspringResources = 0.0;//offspring resources are set to 0
 		Agent a = new Agent(state,offer,accept, false, offspringResources, g.x, g.y);//create an agent
-		a.accept = accept;
 		offspring++;//count offspring
+		if(lineage != null)
+			a.lineage = lineage.child((long)state.schedule.getTime(), a.offerIndex == offerIndex, a.id);
+		if(state.trace != null)
+			state.trace.birth((long)state.schedule.getTime(), a, id, g.x * state.gridHeight + g.y);
 		a.setGroup(g);//set it to the selected group
-		g.members.add(a); //add it to the group
+		g.addMember(a); //add it to the group
 		a.x = g.x;//set location
 		a.y = g.y;
-		a.event = state.schedule.scheduleRepeating(a);//schedule agent
+		if(state.eventDriven)
+			a.startEvents((long)state.schedule.getTime() + 1);
+		else
+			a.event = state.schedule.scheduleRepeating(a);//schedule agent
 		return a; //return the agent
 
 	}
 
 
-	public Double2D mutationStrategies(Environment state) {
-		Double2D chromosome = chromosome( state);
-		if(chromosome == null) {
-			return null;//can happen for sex
-		}
-		double offer ;
-		double accept;
-		if(state.sex) {
-			offer = chromosome.x;
-			accept = chromosome.y;
-		}
-		else {
-			offer = this.offer;
-			accept = this.accept;
+	/**
+	 * The strategy of an offspring, the chromosome after mutation, as offer index * offer
+	 * levels + accept index.
+	 * @param state
+	 * @return -1 if there is no mate
+	 */
+	public int mutationStrategies(Environment state) {
+		final int chromosome = chromosome( state);
+		if(chromosome < 0) {
+			return -1;//can happen for sex
 		}
-		Bag b = new Bag();
+		final int levels = state.offerArray.length;
+		int offer = chromosome / levels;
+		int accept = chromosome % levels;
 
-		if(state.random.nextBoolean(state.mutationRate)) {
-			accept = state.offerArray[state.random.nextInt(state.offerArray.length)];//less than or equal to equity
+		if(state.mutation.next(state.random, state.mutationRate)) {
+			accept = state.random.nextInt(levels);//less than or equal to equity
 		}
 
-		if(state.random.nextBoolean(state.mutationRate)) {
-			offer = state.offerArray[state.random.nextInt(state.offerArray.length)];//less than or equal to equity
+		if(state.mutation.next(state.random, state.mutationRate)) {
+			offer = state.random.nextInt(levels);//less than or equal to equity
 		}
 
-
-		b.add(offer);
-		b.add(accept);
-		return new Double2D(offer,accept);
+		return offer * levels + accept;
 	}
 
 	public double accept(Environment state, double endowment) {
-		return accept * endowment;
+		return getAccept() * endowment;
 	}
 
 	public double offer(Environment state) {
-		this.currentOffer = offer;
+		this.currentOffer = getOffer();
 		return this.currentOffer;
 	}
 
@@ -250,14 +313,20 @@ public class Agent implements Steppable {
 	 * @param state
 	 */
 	public void die(Environment state) {
+		if(state.trace != null)
+			state.trace.death((long)state.schedule.getTime(), this, group.x * state.gridHeight + group.y);
 		state.experimenter.recordOffspring(this);//record the number of offsrping produced
 		state.experimenter.recordOffers(this);//records the offer for mean calculation
 		state.experimenter.recordOffer(this);//bins the offer
 		state.experimenter.recordAccepts(this);//records the offer for mean calculation
 		state.experimenter.recordAccept(this);//bins the offer
 		event.stop();//remove the agent from the schedule
-		group.members.remove(this);//remove self from group
+		if(lineage != null)
+			lineage.die();
+		group.removeMember(this);//remove self from group
 		if(state.dynamicColorGroup) group.setColor();//this recolors a group
+		store.release(slot);
+		slot = -1;
 	}
 
 	/**
@@ -266,27 +335,20 @@ public class Agent implements Steppable {
 	 * @param state
 	 * @param x
 	 * @param y
-	 * @param mode
 	 * @param searchRadius
 	 * @param includeOrigin
 	 * @return
 	 */
-	public Int2D randomUniqueLocation(Environment state,final int x, final int y, final int mode, final int searchRadius, boolean includeOrigin){
-		xPos.clear();
-		yPos.clear();
-		locations.clear();
-		state.sparseSpace.getMooreLocations(x, y, searchRadius, mode, includeOrigin, xPos, yPos);
-		if(xPos.numObjs == 0)
+	public Int2D randomUniqueLocation(Environment state,final int x, final int y, final int searchRadius, boolean includeOrigin){
+		final int n = state.neighborhood.locations(x, y, searchRadius, includeOrigin);
+		if(n == 0)
 			return null;
 		//we want to randomize the selection of a new empty cell, so the first/second pass method should be fast
-		final int k = state.random.nextInt(xPos.numObjs); //a random starting position
-		for(int i=0;i<xPos.numObjs;i++) {//find all empty locations
-			if(state.sparseSpace.getObjectsAtLocation(xPos.objs[i], yPos.objs[i])==null) {
-				locations.add( new Int2D(xPos.objs[i], yPos.objs[i]));
-			}
-		}
-		if(locations.numObjs>0) {//If there is at least one empty location, return one randomly
-			return (Int2D)locations.objs[state.random.nextInt(locations.numObjs)];
+		final int k = state.random.nextInt(n); //a random starting position
+		IntBag empty = state.neighborhood.emptyCells();//find all empty locations
+		if(empty.numObjs>0) {//If there is at least one empty location, return one randomly
+			final int cell = empty.objs[state.random.nextInt(empty.numObjs)];
+			return new Int2D(cell / state.gridHeight, cell % state.gridHeight);
 		}
 		else
 			return null;//if there were no returns in the first and second passes, then there are no empty locations
@@ -297,52 +359,45 @@ public class Agent implements Steppable {
 	 * @param state
 	 * @param x
 	 * @param y
-	 * @param mode
 	 * @param searchRadius
 	 * @param includeOrigin
 	 * @return
 	 */
-	public Group findGroupLocal(Environment state,final int x, final int y, final int mode, final int searchRadius, boolean includeOrigin){
-		Bag groups;
-		groups = state.sparseSpace.getMooreNeighbors(x, y, searchRadius, mode, includeOrigin);
-		if(groups.numObjs == 0)
-			return null;
+	public Group findGroupLocal(Environment state,final int x, final int y, final int searchRadius, boolean includeOrigin){
+		Bag groups = state.neighborhood.neighbors(x, y, searchRadius, includeOrigin);
 		//we want to randomize the selection of a occupied empty cell, so the first/second pass method should be fast
-		//check for empty groups and remove them
-		Bag nonEmptyGroups = new Bag();
+		//check for empty groups and remove them, in place since groups is a scratch bag
+		int nonEmpty = 0;
 		for(int i=0;i<groups.numObjs;i++) {
 			Group g = (Group)groups.objs[i];
 			if(g.members.numObjs > 0) {
-				nonEmptyGroups.add(g);
+				groups.objs[nonEmpty++] = g;
 			}
 		}
-		if(nonEmptyGroups.numObjs == 0)
+		if(nonEmpty == 0)
 			return null;
 		
-		final int k = state.random.nextInt(nonEmptyGroups.numObjs); //a random group
-		return (Group)nonEmptyGroups.objs[k];
+		final int k = state.random.nextInt(nonEmpty); //a random group
+		return (Group)groups.objs[k];
 	}
 
 	/**
-	 * Finds a random group nearest to calling group if one exists.
+	 * Finds a random group nearest to calling group if one exists.  The search starts at
+	 * radius 2.
 	 * @param state
 	 * @param x
 	 * @param y
-	 * @param mode
-	 * @param searchRadius
-	 * @param includeOrigin
 	 * @return
 	 */
-	public Group findGroupNearest(Environment state,final int x, final int y, final int mode){
+	public Group findGroupNearest(Environment state,final int x, final int y){
 		if(state.sparseSpace.getAllObjects().numObjs <2)//make sure there is at least one other group
 			return null;
 		Bag groups;
 		int i = 1; //starting search radius
-		groups = state.sparseSpace.getMooreNeighbors(x, y, i, mode, false);
 		Group g = null;
-		while(groups.numObjs == 0 || g == null) {//loop till at least one is found
+		while(g == null) {//loop till at least one is found
 			i++;//increment search radius
-			groups = state.sparseSpace.getMooreNeighbors(x, y, i, mode, false);
+			groups = state.neighborhood.neighbors(x, y, i, false);
 			if(groups.numObjs > 0) {
 				groups.shuffle(state.random);
 				for(int j=0;j<groups.numObjs;j++) {
@@ -367,11 +422,11 @@ public class Agent implements Steppable {
 	public void groupFission(Environment state) {
 		if(group.members.numObjs> state.maxGroupSize) {
 			Int2D xy = null;
-			if(state.random.nextBoolean(state.globalGroupDispersion)) {
+			if(state.globalDispersal.next(state.random, state.globalGroupDispersion)) {
 				int x = state.random.nextInt(state.gridWidth);
 				int y = state.random.nextInt(state.gridHeight);
 				int test = 0;
-				while(state.sparseSpace.getObjectsAtLocation(x, y) != null) {//don't get caught in a loop
+				while(state.neighborhood.objectsAt(x, y) != null) {//don't get caught in a loop
 					if(test >= 1000) {
 						System.out.println("No space found after 10000 attempts");
 						break;//break while statement
@@ -383,7 +438,7 @@ public class Agent implements Steppable {
 				xy = new Int2D(x,y);
 			}
 			else {
-				xy = randomUniqueLocation(state,x,y,SparseGrid2D.TOROIDAL,state.groupRadius,false);
+				xy = randomUniqueLocation(state,x,y,state.groupRadius,false);
 				if(xy == null)
 					return;
 			}
@@ -411,7 +466,7 @@ public class Agent implements Steppable {
 			if (newMembers.numObjs <= 1 || oldMembers.numObjs <= 1) {
 				System.out.println("Singleton fission 2");
 			}
-			group.members = oldMembers;//just make the members the oldMembers bag
+			group.setMembers(oldMembers);//just make the members the oldMembers bag
 			Group g = new Group(state,xy.x,xy.y,newMembers);
 			g.event = state.schedule.scheduleRepeating(state.schedule.getTime()+1,1,g);//schdule after agents
 			state.sparseSpace.setObjectLocation(g, xy.x, xy.y);
@@ -427,49 +482,136 @@ public class Agent implements Steppable {
 	 * @param state
 	 */
 	public void groupDisperse(Environment state) {
+		Group old = group;
 		Bag members = group.members;
 		if(members.numObjs< state.minGroupSize) {
-			Group g = findGroupNearest( state,group.x, group.y, state.sparseSpace.TOROIDAL);
+			Group g = findGroupNearest( state,group.x, group.y);
 			if(g==null) return;//nowhere to go
 			for(int i=0;i<members.numObjs;i++) {
 				Agent a = (Agent)members.objs[i];
 				a.x = g.x;
 				a.y = g.y;
 				a.setGroup(g);
-				g.members.add(a);
+				g.addMember(a);
 			}
 			members.clear();//clear the group members, will die when called
+			old.version++;
+			state.mates.reset(old);
 		}
 	}
 
+	/**
+	 * Event driven mode: schedules the first step of an agent.
+	 * @param tick first tick the agent could step
+	 */
+	public void startEvents(long tick) {
+		syncTick = tick;
+		eventTick = Long.MAX_VALUE;
+		wakeAt(nextEvent());
+	}
+
+	/**
+	 * Event driven mode: brings age and reproductiveCount up to the start of a tick, as if
+	 * the agent had stepped every tick since syncTick.
+	 * @param tick
+	 */
+	void catchUp(long tick) {
+		final long ticks = tick - syncTick;
+		store.setAge(slot, (int)(store.getAge(slot) + ticks));
+		if(state.ibi)
+			store.setReproductiveCount(slot, store.getReproductiveCount(slot) + ticks);
+		syncTick = tick;
+	}
+
+	/**
+	 * Event driven mode: the next tick at which stepping the agent can change anything, the
+	 * tick it dies or, if it has the resources, the tick it can reproduce.
+	 * @return
+	 */
+	long nextEvent() {
+		long t = syncTick + Math.max(0, store.getMaxAge(slot) - store.getAge(slot));//death
+		if(store.getResources(slot) >= io)
+			t = Math.min(t, readyTick());
+		return t;
+	}
+
+	/**
+	 * Event driven mode: the first tick at which the agent could reproduce if it had the
+	 * resources, the end of its IBI.
+	 * @return
+	 */
+	long readyTick() {
+		if(!state.ibi)
+			return syncTick;
+		return syncTick + (long)Math.max(0.0, Math.ceil(ibiTau - 1 - store.getReproductiveCount(slot)));
+	}
+
+	/**
+	 * Event driven mode: schedules a step at tick unless one is already scheduled by then.
+	 * @param tick
+	 */
+	void wakeAt(long tick) {
+		if(tick >= eventTick)
+			return;
+		if(event != null)
+			event.stop();
+		TentativeStep s = new TentativeStep(this);
+		state.schedule.scheduleOnce(tick, 0, s);
+		event = s;
+		eventTick = tick;
+	}
+
+	/**
+	 * Event driven mode: called by the group after play, wakes the agent on the next tick
+	 * if its resources are now enough to reproduce.
+	 * @param tick current tick
+	 */
+	public void resourcesChanged(long tick) {
+		if(store.getResources(slot) >= io)
+			wakeAt(Math.max(nextEvent(), tick + 1));
+	}
+
 	/**
 	 * Step method first assesses age, handles reproduction, and increments age. Playing the nDG
-	 * is accomplished at the level of the group.
+	 * is accomplished at the level of the group. In event driven mode, agents are only stepped
+	 * at ticks returned by nextEvent or after play gives them the resources to reproduce, and
+	 * catch up on the ticks they skipped.
 	 */
 	public void step(SimState state) {
-		if(age >= maxAge) {
+		if(this.state.eventDriven) {
+			catchUp((long)state.schedule.getTime());
+			eventTick = Long.MAX_VALUE;//this step was the scheduled one
+		}
+		final AgentStore store = this.store;
+		final int slot = this.slot;
+		final int age = store.getAge(slot);
+		if(age >= store.getMaxAge(slot)) {
 			die(this.state); 
 			groupDisperse(this.state);//if group is too small after death of a member, disperse
 			return;
 		}
 		if(this.state.ibi) {
-			reproductiveCount++;
-			if (reproductiveCount >= ibiTau && resources >=  io) {
+			final double reproductiveCount = store.getReproductiveCount(slot) + 1;
+			store.setReproductiveCount(slot, reproductiveCount);
+			if (reproductiveCount >= ibiTau && store.getResources(slot) >=  io) {
 				reproduce(this.state,this.state.dispersalRadius);
-				reproductiveCount=0.0;
+				store.setReproductiveCount(slot, 0.0);
 				groupFission(this.state);//check if group too large after possible birth of a member.
 			} 
 		}
 		else {
 
-			if (resources >=  io) { 
+			if (store.getResources(slot) >=  io) { 
 				reproduce(this.state,this.state.dispersalRadius);
 				groupFission(this.state);//check if group too large after possible birth of a member.
 			} 
 		}
 
-		age++;
-
+		store.setAge(slot, age + 1);
+		if(this.state.eventDriven) {
+			syncTick++;
+			wakeAt(nextEvent());
+		}
 	}
 
 }
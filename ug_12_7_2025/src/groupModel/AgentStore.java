@@ -0,0 +1,88 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import sim.util.IntBag;
+
+/**
+ * Columns of the numeric state of the agents: resources, endowment, IBI counter, age and
+ * maximum age, each a Java array.  Each agent has a slot, and the slots of agents that die
+ * are reused.  The offer and accept are not stored here, they are the offerIndex and
+ * acceptIndex of the agent.
+ */
+public class AgentStore implements Serializable {
+	private static final long serialVersionUID = 1L;
+	int capacity; //slots allocated
+	int used = 0; //slots handed out at least once
+	IntBag free = new IntBag(); //slots of dead agents
+	double[] resources, endowment, reproductiveCount;
+	int[] age, maxAge;
+
+	/**
+	 * Creates a store.
+	 * @param capacity initial number of slots, the store grows as needed
+	 */
+	public AgentStore(int capacity) {
+		super();
+		this.capacity = Math.max(16, capacity);
+		resources = new double[this.capacity];
+		endowment = new double[this.capacity];
+		reproductiveCount = new double[this.capacity];
+		age = new int[this.capacity];
+		maxAge = new int[this.capacity];
+	}
+
+	/**
+	 * A slot for a new agent.
+	 * @return
+	 */
+	public int allocate() {
+		if(free.numObjs > 0)
+			return free.pop();
+		if(used == capacity)
+			grow(2 * capacity);
+		return used++;
+	}
+
+	/**
+	 * Frees the slot of an agent that died.
+	 * @param slot
+	 */
+	public void release(int slot) {
+		free.add(slot);
+	}
+
+	/**
+	 * Number of slots in use.
+	 * @return
+	 */
+	public int size() {
+		return used - free.numObjs;
+	}
+
+	void grow(int capacity) {
+		resources = Arrays.copyOf(resources, capacity);
+		endowment = Arrays.copyOf(endowment, capacity);
+		reproductiveCount = Arrays.copyOf(reproductiveCount, capacity);
+		age = Arrays.copyOf(age, capacity);
+		maxAge = Arrays.copyOf(maxAge, capacity);
+		this.capacity = capacity;
+	}
+
+	public double getResources(int slot) { return resources[slot]; }
+	public void setResources(int slot, double resources) { this.resources[slot] = resources; }
+	public double getEndowment(int slot) { return endowment[slot]; }
+	public void setEndowment(int slot, double endowment) { this.endowment[slot] = endowment; }
+	public double getReproductiveCount(int slot) { return reproductiveCount[slot]; }
+	public void setReproductiveCount(int slot, double count) { reproductiveCount[slot] = count; }
+	public int getAge(int slot) { return age[slot]; }
+	public void setAge(int slot, int age) { this.age[slot] = age; }
+	public int getMaxAge(int slot) { return maxAge[slot]; }
+	public void setMaxAge(int slot, int maxAge) { this.maxAge[slot] = maxAge; }
+}
@@ -0,0 +1,165 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.Timer;
+
+import sweep.GUIStateSweep;
+
+/**
+ * Hands chart data from the simulation thread to the Swing thread without blocking
+ * either.  The Experimenter publishes a Frame each sampling interval: the points of the
+ * time series charts and the number of agents at each level of the offers made and of
+ * the accepts.  Frames go through a single slot.  A frame that has not been drawn yet is
+ * taken back and extended, so time series points accumulate while the histograms of
+ * older intervals are overwritten by the latest.  A Swing timer draws the frame in the
+ * slot every PERIOD milliseconds and returns it for reuse, so the simulation never waits
+ * for the charts and, once two frames are circulating, publishing allocates nothing.
+ */
+public class ChartPublisher implements ActionListener {
+	public static final int PERIOD = 250; //milliseconds between chart updates
+	static final int SERIES = 3; //mean offer, mean accept and rejection rate
+	final AtomicReference<Frame> slot = new AtomicReference<Frame>(); //frame waiting to be drawn
+	final AtomicReference<Frame> free = new AtomicReference<Frame>(); //drawn frame for reuse
+	final Timer timer;
+
+	/**
+	 * The chart data of one or more sampling intervals.
+	 */
+	public static class Frame {
+		long step; //step of the latest interval
+		int points = 0; //number of time series points
+		double[] time = new double[16];
+		double[][] y = new double[SERIES][16]; //[series][point]
+		boolean levels = false; //true if the level counts are set
+		double[] values; //offer of each level
+		double[] offerCounts = new double[0]; //number of agents at each level of the offers they made
+		double[] acceptCounts = new double[0];
+
+		/**
+		 * Adds a point to each time series.
+		 * @param t
+		 * @param offer
+		 * @param accept
+		 * @param reject
+		 */
+		public void add(double t, double offer, double accept, double reject) {
+			if(points == time.length) {
+				time = Arrays.copyOf(time, 2 * points);
+				for(int s=0;s<SERIES;s++)
+					y[s] = Arrays.copyOf(y[s], 2 * points);
+			}
+			time[points] = t;
+			y[0][points] = offer;
+			y[1][points] = accept;
+			y[2][points] = reject;
+			points++;
+		}
+
+		/**
+		 * Clears the level counts for a lattice of offers, to be counted again.
+		 * @param offerArray
+		 */
+		public void clearLevels(double[] offerArray) {
+			values = offerArray;
+			if(offerCounts.length != offerArray.length) {
+				offerCounts = new double[offerArray.length];
+				acceptCounts = new double[offerArray.length];
+			}
+			Arrays.fill(offerCounts, 0);
+			Arrays.fill(acceptCounts, 0);
+			levels = true;
+		}
+	}
+
+	public ChartPublisher() {
+		super();
+		timer = new Timer(PERIOD, this);
+		timer.start();
+	}
+
+	/**
+	 * Takes the frame to be filled for an interval: the undrawn frame, or a cleared one.
+	 * @param step
+	 * @return
+	 */
+	public Frame begin(long step) {
+		Frame f = slot.getAndSet(null);
+		if(f == null) {
+			f = free.getAndSet(null);
+			if(f == null)
+				f = new Frame();
+			f.points = 0;
+			f.levels = false;
+		}
+		f.step = step;
+		return f;
+	}
+
+	/**
+	 * Puts a frame in the slot to be drawn.
+	 * @param f
+	 */
+	public void publish(Frame f) {
+		slot.set(f);
+	}
+
+	/**
+	 * Drops the frame waiting to be drawn, at the start of a simulation.
+	 */
+	public void clear() {
+		slot.set(null);
+	}
+
+	/**
+	 * Draws the frame in the slot, on the Swing thread.
+	 */
+	public void actionPerformed(ActionEvent e) {
+		final Frame f = slot.getAndSet(null);
+		if(f == null)
+			return;
+		if(f.points > 0 && GUIStateSweep.arrayChartTimeSeries != null) {
+			for(int s=0;s<SERIES;s++) {
+				for(int i=0;i<f.points;i++)
+					GUIStateSweep.arraySeries[s].add(f.time[i], f.y[s][i], false);
+				GUIStateSweep.arraySeries[s].fireSeriesChanged();
+				GUIStateSweep.arrayChartTimeSeries[s].update(f.step, true);
+			}
+		}
+		if(f.levels && GUIStateSweep.arrayChartHistogram != null) {
+			histogram(0, f.offerCounts, f.values, f.step);
+			histogram(2, f.acceptCounts, f.values, f.step);
+		}
+		free.set(f);
+	}
+
+	/**
+	 * Draws a histogram chart from the number of agents at each level.  The chart keeps the
+	 * array of values it is given, so a new one is made for each frame drawn.
+	 * @param chart
+	 * @param counts
+	 * @param values
+	 * @param step
+	 */
+	static void histogram(int chart, double[] counts, double[] values, long step) {
+		int n = 0;
+		for(int i=0;i<counts.length;i++)
+			n += (int)counts[i];
+		double[] data = new double[n];
+		int k = 0;
+		for(int i=0;i<counts.length;i++) {
+			for(int j=0;j<(int)counts[i];j++)
+				data[k++] = values[i];
+		}
+		GUIStateSweep.arrayChartHistogram[chart].updateSeries(0, data);
+		GUIStateSweep.arrayChartHistogram[chart].update(step, true);
+	}
+}
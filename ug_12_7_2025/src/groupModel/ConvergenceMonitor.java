@@ -0,0 +1,175 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.util.Arrays;
+
+/**
+ * Keeps time series sampled during a simulation (e.g. mean offer, mean accept and
+ * rejection rate) and tests whether they have become stationary. The Geweke test compares
+ * the mean of the first 10% of a window of samples with the mean of its last 50%, using
+ * batch means to estimate the variance of each mean. MSER-5 finds the end of the
+ * initial transient of a series.
+ */
+public class ConvergenceMonitor {
+	double[][] series; //series[s][i] is sample i of series s
+	int n = 0; //number of samples
+
+	public ConvergenceMonitor(int numberOfSeries) {
+		super();
+		series = new double[numberOfSeries][64];
+	}
+
+	public void clear() {
+		n = 0;
+	}
+
+	public int size() {
+		return n;
+	}
+
+	public double get(int s, int i) {
+		return series[s][i];
+	}
+
+	/**
+	 * Adds one sample of every series.
+	 * @param values
+	 */
+	public void add(double... values) {
+		if(n == series[0].length) {
+			for(int s=0;s<series.length;s++)
+				series[s] = Arrays.copyOf(series[s], 2 * n);
+		}
+		for(int s=0;s<series.length;s++)
+			series[s][n] = values[s];
+		n++;
+	}
+
+	static double mean(double[] x, int from, int to) {
+		double sum = 0;
+		for(int i=from;i<to;i++)
+			sum += x[i];
+		return sum / (to - from);
+	}
+
+	/**
+	 * Variance of the mean of x[from..to) estimated from 5 batch means, which allows for
+	 * autocorrelation within batches.
+	 * @param x
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	static double varianceOfMean(double[] x, int from, int to) {
+		final int batches = 5;
+		int b = (to - from) / batches;//batch size
+		if(b < 1)
+			return 0;
+		double grand = mean(x, from, from + b * batches);
+		double ss = 0;
+		for(int k=0;k<batches;k++) {
+			double d = mean(x, from + k * b, from + (k + 1) * b) - grand;
+			ss += d * d;
+		}
+		return ss / (batches - 1) / batches;
+	}
+
+	/**
+	 * Geweke z score of a series over the last window samples.
+	 * @param s
+	 * @param window
+	 * @return
+	 */
+	public double gewekeZ(int s, int window) {
+		double[] x = series[s];
+		int start = n - window;
+		int endA = start + window / 10;
+		int startB = n - window / 2;
+		double d = mean(x, start, endA) - mean(x, startB, n);
+		double v = varianceOfMean(x, start, endA) + varianceOfMean(x, startB, n);
+		if(v <= 0)
+			return d == 0 ? 0 : Double.POSITIVE_INFINITY;
+		return d / Math.sqrt(v);
+	}
+
+	/**
+	 * True if there are at least window samples and the Geweke z score of every series
+	 * is within zCritical. Windows need at least 50 samples so that the first 10% can be
+	 * split into batches.
+	 * @param window
+	 * @param zCritical
+	 * @return
+	 */
+	public boolean converged(int window, double zCritical) {
+		if(n < window || window < 50)
+			return false;
+		for(int s=0;s<series.length;s++) {
+			if(Math.abs(gewekeZ(s, window)) > zCritical)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * MSER-5 truncation point of a series: the series is split into batches of 5 samples
+	 * and the number of leading batches d is chosen to minimize the squared standard error
+	 * of the remaining batch means, sum((y_k - mean)^2) / (m - d)^2. Truncation points are
+	 * searched in the first half of the series (the statistic is unstable near its end). If
+	 * the minimum is at the end of the first half, the series is still in its transient and
+	 * -1 is returned.
+	 * @param s
+	 * @return the number of samples in the transient, or -1
+	 */
+	public int mser5(int s) {
+		final int batch = 5;
+		int m = n / batch;//number of batch means
+		if(m < 4)
+			return -1;
+		double[] x = series[s];
+		double[] y = new double[m];
+		for(int k=0;k<m;k++)
+			y[k] = mean(x, k * batch, (k + 1) * batch);
+		final int last = m / 2;//last truncation point searched
+		double sum = 0, sumSq = 0;//of the batch means from d to the end
+		for(int k=m-1;k>last;k--) {
+			sum += y[k];
+			sumSq += y[k] * y[k];
+		}
+		double best = Double.POSITIVE_INFINITY;
+		int bestD = -1;
+		for(int d=last;d>=0;d--) {
+			sum += y[d];
+			sumSq += y[d] * y[d];
+			int r = m - d;
+			double ss = Math.max(0.0, sumSq - sum * sum / r);
+			double statistic = ss / ((double)r * r);
+			if(statistic <= best) {//ties go to the shorter transient
+				best = statistic;
+				bestD = d;
+			}
+		}
+		if(bestD == last)
+			return -1;
+		return bestD * batch;
+	}
+
+	/**
+	 * Length of the transient of all series: the largest MSER-5 truncation point, or -1 if
+	 * any series is still in its transient.
+	 * @return
+	 */
+	public int transient5() {
+		int t = 0;
+		for(int s=0;s<series.length;s++) {
+			int d = mser5(s);
+			if(d < 0)
+				return -1;
+			t = Math.max(t, d);
+		}
+		return t;
+	}
+}
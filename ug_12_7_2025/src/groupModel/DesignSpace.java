@@ -0,0 +1,142 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.util.ArrayList;
+
+/**
+ * The cells of a parameter sweep. Every parameter of a script file with more than one
+ * value is a dimension of the design, so the number of swept parameters is not limited.
+ * Cells are computed from their index when they are needed and the table of cells is never
+ * built, so a sweep starts at once and uses the same memory whatever its size.
+ *
+ * For a full factorial design the listed values are the levels of a parameter. For the
+ * sampling designs (Latin hypercube and Sobol) the smallest and largest listed values are
+ * the range of the parameter; int parameters are sampled over the integers in the range and
+ * boolean parameters take both values.
+ */
+public abstract class DesignSpace {
+	public static final String FACTORIAL = "factorial";
+	public static final String LATIN_HYPERCUBE = "lhs";
+	public static final String SOBOL = "sobol";
+
+	String[] types; //parameter types, e.g. "double"
+	String[] names; //parameter names, i.e. Environment fields
+	Object[][] levels; //values listed in the script for each parameter
+
+	/**
+	 * @param swept script rows {"public", type, name, value1, value2, ...} with more than one value
+	 */
+	public DesignSpace(ArrayList<ArrayList<Object>> swept) {
+		super();
+		int d = swept.size();
+		types = new String[d];
+		names = new String[d];
+		levels = new Object[d][];
+		for(int i=0;i<d;i++) {
+			ArrayList<Object> row = swept.get(i);
+			types[i] = (String)row.get(1);
+			names[i] = (String)row.get(2);
+			levels[i] = row.subList(3, row.size()).toArray();
+		}
+	}
+
+	/**
+	 * Number of cells in the design.
+	 * @return
+	 */
+	public abstract long size();
+
+	/**
+	 * Value of a parameter in a cell.
+	 * @param cell
+	 * @param dimension
+	 * @return
+	 */
+	public abstract Object value(long cell, int dimension);
+
+	public int dimensions() {
+		return names.length;
+	}
+
+	public String name(int dimension) {
+		return names[dimension];
+	}
+
+	/**
+	 * Parameter rows of a cell, ready for HeadlessRun.
+	 * @param cell
+	 * @return
+	 */
+	public ArrayList<ArrayList<Object>> cell(long cell) {
+		ArrayList<ArrayList<Object>> p = new ArrayList<ArrayList<Object>>(names.length);
+		for(int i=0;i<names.length;i++)
+			p.add(SweepTask.parameter(types[i], names[i], value(cell, i)));
+		return p;
+	}
+
+	/**
+	 * Maps a number in [0,1) to a value in the range of a parameter.
+	 * @param dimension
+	 * @param u
+	 * @return
+	 */
+	protected Object fromUnit(int dimension, double u) {
+		Object[] l = levels[dimension];
+		if(types[dimension].equals("boolean"))
+			return Boolean.valueOf(u >= 0.5);
+		double min = ((Number)l[0]).doubleValue();
+		double max = min;
+		for(int i=1;i<l.length;i++) {
+			double v = ((Number)l[i]).doubleValue();
+			if(v < min) min = v;
+			if(v > max) max = v;
+		}
+		switch(types[dimension]) {
+		case "int": return Integer.valueOf((int)Math.min(max, Math.floor(min + u * (max - min + 1))));
+		case "long": return Long.valueOf((long)Math.min(max, Math.floor(min + u * (max - min + 1))));
+		case "short": return Short.valueOf((short)Math.min(max, Math.floor(min + u * (max - min + 1))));
+		case "float": return Float.valueOf((float)(min + u * (max - min)));
+		default: return Double.valueOf(min + u * (max - min));
+		}
+	}
+
+	/**
+	 * Splits script rows into the fixed rows and the rows with more than one value.
+	 * @param table converted script rows
+	 * @param fixed receives the fixed rows
+	 * @return the swept rows
+	 */
+	public static ArrayList<ArrayList<Object>> split(ArrayList<ArrayList<Object>> table, ArrayList<ArrayList<Object>> fixed) {
+		ArrayList<ArrayList<Object>> swept = new ArrayList<ArrayList<Object>>();
+		for(int i=0;i<table.size();i++) {
+			ArrayList<Object> row = table.get(i);
+			if(row.size() > 4)
+				swept.add(row);
+			else
+				fixed.add(row);
+		}
+		return swept;
+	}
+
+	/**
+	 * Makes a design.
+	 * @param design FACTORIAL, LATIN_HYPERCUBE or SOBOL
+	 * @param swept rows with more than one value
+	 * @param samples number of cells of a sampling design
+	 * @param seed seed of the Latin hypercube permutations
+	 * @return
+	 */
+	public static DesignSpace make(String design, ArrayList<ArrayList<Object>> swept, long samples, long seed) {
+		if(design == null || design.equalsIgnoreCase(FACTORIAL))
+			return new FactorialDesign(swept);
+		if(design.equalsIgnoreCase(LATIN_HYPERCUBE))
+			return new LatinHypercubeDesign(swept, samples, seed);
+		if(design.equalsIgnoreCase(SOBOL))
+			return new SobolDesign(swept, samples);
+		throw new IllegalArgumentException("Unknown design: "+design);
+	}
+}
@@ -4,12 +4,16 @@ Licensed under the Academic Free License version 3.0
 See https://opensource.org/licenses/AFL-3.0 for more information
  */
 package groupModel;
+
 /**
  * Simulation environment for ultimatum game evolutionary simulations.
  * To run this simulation in graphic mode requires MASON (19), MASONplus10, and jfreechart-1.0.17.jar 
  * 
  */
 
+import java.io.IOException;
+import java.util.Arrays;
+
 import sim.util.Bag;
 import sim.util.distribution.Uniform;
 import spaces.Spaces;
@@ -55,7 +59,8 @@ public class Environment extends SimStateSweep {
 	//game parameters
 	public int recipients = 1;//maximum number of recipients, or target number of recipients
 	public int proposers = 1; //the number of proposers in the game.  for the n-person ultimatum game n = recipients + proposers
-	public int n_intervals = 10; //even number
+	public int n_intervals = 10; //number of intervals of the offer lattice, 4 to 12 even as in earlier versions, otherwise a generated uniform lattice
+	public int outputBins = 0; //if > 0, the offer, rejection, accept and lineage distributions of a data row are coarsened to this many bins of adjacent levels
 	//--value set as an example to generate distribution in Engle 2011
 	public boolean sex = true;//sexual reproduction
 	public boolean ugOfferZero = false;//intitializes all offers and acceptance values to 0
@@ -67,6 +72,8 @@ public class Environment extends SimStateSweep {
 	//other variables 
 	public Experimenter experimenter;//agent that runs and collects data from simulations
 	public double [] offerArray;//values of offer mutations
+	public double[] keepFraction;//fraction of the endowment a proposer keeps for each offer
+	public double[] giveFraction;//fraction of the endowment a proposer gives for each offer
 	public int offerIntervals;//number of intervals
 	public boolean dynamicColorGroup = false;//if true, groups are dynamically colored on birth, death, dispersion
 	public int samplingInterFactor = 10; //multiplied by average age
@@ -76,6 +83,43 @@ public class Environment extends SimStateSweep {
 	public Uniform uniform = null;
 	public TruncNormal tnormal = null;
 
+	//convergence monitoring
+	public boolean convergenceMonitor = false;//if true, runs end early (or skip to data collection) when the series have converged
+	public boolean stopAtConvergence = false;//if true, stop at convergence, else collect data for generations - burinGenerations after it
+	public int convergenceInterval = 0;//steps between monitor samples, 0 for one sample each averageAge
+	public int convergenceWindow = 100;//number of monitor samples in the Geweke test
+	public double convergenceZ = 1.96;//critical z score of the Geweke test
+	public boolean adaptiveBurnIn = false;//if true, data collection starts when MSER-5 finds the end of the transient
+	public int burnInMinSamples = 100;//monitor samples needed before the transient is tested
+	public boolean eventDriven = false;//if true, agents are only stepped when they die, can reproduce, or reach io
+	public boolean fastForward = false;//approximate: with eventDriven, stable groups skip play and sample the gains (not with playMode COALITIONS)
+	public int fastForwardMinTicks = 10;//shortest jump of a fast forwarding group
+	public boolean strategyCounts = false;//if true, groups keep counts of strategies (StrategyCountGroup) instead of agents
+	public int population = 0;//number of agents, kept up to date in strategy count mode
+	public boolean ugKernel = false;//if true, full games of a round are played on arrays by UgKernel
+	UgKernel kernel = new UgKernel();//shared by the groups
+	public boolean eventTrace = false;//if true, every agent birth and death is written to traceFile (EventTrace)
+	public String traceFile = "trace.bin";
+	public int traceCapacity = 1 << 20;//records kept in the trace file, older records are overwritten
+	transient EventTrace trace = null;
+	long nextAgentId = 0;//id of the next agent created
+	public int gridSnapshotInterval = 0;//if > 0, ticks between frames of the group grid written to gridSnapshotFile (GridRecorder)
+	public String gridSnapshotFile = "grid.bin";
+	transient GridRecorder gridRecorder = null;
+	public boolean lineageTracking = false;//if true, agents carry their genealogy (Lineage) and the time to the most recent common ancestor, the initial agents with living descendants and the offer lineages are reported
+	AgentStore agents = null;//numeric state of the agents, made by makeGroups
+	MooreNeighborhood neighborhood = null;//neighborhoods of sparseSpace and their scratch bags, made by makeGroups
+	public int mating = Mating.RANDOM;//with sex, how mates are chosen: 0 a random other member, 1 a member with the nearest offer (assortative), 2 self, as in earlier versions
+	Mating mates = null;//made by makeGroups from mating
+	public boolean geometricSampling = false;//if true, mutation and dispersal events are drawn by counting down geometric gaps (RareEvent)
+	RareEvent mutation = null;//trials of mutationRate, made by makeGroups
+	RareEvent dispersal = null;//trials of dispersalRate
+	RareEvent globalDispersal = null;//trials of globalGroupDispersion
+	public int playMode = Group.PAIRS;//0 random pairs each round, 1 expected payoffs against all other members (Group.expectedPlay), 2 n-person games in coalitions of proposers + recipients (NPersonGame)
+	public int acceptanceRule = NPersonGame.UNANIMITY;//n-person game: 0 every recipient must accept, 1 a majority, 2 at least acceptanceThreshold of the recipients
+	public double acceptanceThreshold = 0.5;//fraction of the recipients that must accept under the threshold rule
+	NPersonGame coalitions = new NPersonGame();//shared by the groups
+
 
 
 
@@ -332,6 +376,246 @@ public class Environment extends SimStateSweep {
 	public void setBurinGenerations(int burinGenerations) {
 		this.burinGenerations = burinGenerations;
 	}
+
+
+	public boolean isConvergenceMonitor() {
+		return convergenceMonitor;
+	}
+
+
+	public void setConvergenceMonitor(boolean convergenceMonitor) {
+		this.convergenceMonitor = convergenceMonitor;
+	}
+
+
+	public boolean isStopAtConvergence() {
+		return stopAtConvergence;
+	}
+
+
+	public void setStopAtConvergence(boolean stopAtConvergence) {
+		this.stopAtConvergence = stopAtConvergence;
+	}
+
+
+	public int getConvergenceWindow() {
+		return convergenceWindow;
+	}
+
+
+	public void setConvergenceWindow(int convergenceWindow) {
+		this.convergenceWindow = convergenceWindow;
+	}
+
+
+	public int getConvergenceInterval() {
+		return convergenceInterval;
+	}
+
+
+	public void setConvergenceInterval(int convergenceInterval) {
+		this.convergenceInterval = convergenceInterval;
+	}
+
+
+	public double getConvergenceZ() {
+		return convergenceZ;
+	}
+
+
+	public void setConvergenceZ(double convergenceZ) {
+		this.convergenceZ = convergenceZ;
+	}
+
+
+	public boolean isAdaptiveBurnIn() {
+		return adaptiveBurnIn;
+	}
+
+
+	public void setAdaptiveBurnIn(boolean adaptiveBurnIn) {
+		this.adaptiveBurnIn = adaptiveBurnIn;
+	}
+
+
+	public int getBurnInMinSamples() {
+		return burnInMinSamples;
+	}
+
+
+	public void setBurnInMinSamples(int burnInMinSamples) {
+		this.burnInMinSamples = burnInMinSamples;
+	}
+
+
+	public boolean isEventDriven() {
+		return eventDriven;
+	}
+
+
+	public void setEventDriven(boolean eventDriven) {
+		this.eventDriven = eventDriven;
+	}
+
+
+	public boolean isFastForward() {
+		return fastForward;
+	}
+
+
+	public void setFastForward(boolean fastForward) {
+		this.fastForward = fastForward;
+	}
+
+
+	public boolean isStrategyCounts() {
+		return strategyCounts;
+	}
+
+
+	public void setStrategyCounts(boolean strategyCounts) {
+		this.strategyCounts = strategyCounts;
+	}
+
+
+	public boolean isUgKernel() {
+		return ugKernel;
+	}
+
+
+	public void setUgKernel(boolean ugKernel) {
+		this.ugKernel = ugKernel;
+	}
+
+
+	public int getGridSnapshotInterval() {
+		return gridSnapshotInterval;
+	}
+
+
+	public void setGridSnapshotInterval(int gridSnapshotInterval) {
+		this.gridSnapshotInterval = gridSnapshotInterval;
+	}
+
+
+	public String getGridSnapshotFile() {
+		return gridSnapshotFile;
+	}
+
+
+	public void setGridSnapshotFile(String gridSnapshotFile) {
+		this.gridSnapshotFile = gridSnapshotFile;
+	}
+
+
+	public boolean isLineageTracking() {
+		return lineageTracking;
+	}
+
+
+	public void setLineageTracking(boolean lineageTracking) {
+		this.lineageTracking = lineageTracking;
+	}
+
+
+	public int getMating() {
+		return mating;
+	}
+
+
+	public void setMating(int mating) {
+		this.mating = mating;
+	}
+
+
+	public boolean isGeometricSampling() {
+		return geometricSampling;
+	}
+
+
+	public void setGeometricSampling(boolean geometricSampling) {
+		this.geometricSampling = geometricSampling;
+	}
+
+
+	public int getPlayMode() {
+		return playMode;
+	}
+
+
+	public void setPlayMode(int playMode) {
+		this.playMode = playMode;
+	}
+
+
+	public int getAcceptanceRule() {
+		return acceptanceRule;
+	}
+
+
+	public void setAcceptanceRule(int acceptanceRule) {
+		this.acceptanceRule = acceptanceRule;
+	}
+
+
+	public double getAcceptanceThreshold() {
+		return acceptanceThreshold;
+	}
+
+
+	public void setAcceptanceThreshold(double acceptanceThreshold) {
+		this.acceptanceThreshold = acceptanceThreshold;
+	}
+
+
+	public int getOutputBins() {
+		return outputBins;
+	}
+
+
+	public void setOutputBins(int outputBins) {
+		this.outputBins = outputBins;
+	}
+
+
+	public boolean isEventTrace() {
+		return eventTrace;
+	}
+
+
+	public void setEventTrace(boolean eventTrace) {
+		this.eventTrace = eventTrace;
+	}
+
+
+	public String getTraceFile() {
+		return traceFile;
+	}
+
+
+	public void setTraceFile(String traceFile) {
+		this.traceFile = traceFile;
+	}
+
+
+	public int getTraceCapacity() {
+		return traceCapacity;
+	}
+
+
+	public void setTraceCapacity(int traceCapacity) {
+		this.traceCapacity = traceCapacity;
+	}
+
+
+	public int getFastForwardMinTicks() {
+		return fastForwardMinTicks;
+	}
+
+
+	public void setFastForwardMinTicks(int fastForwardMinTicks) {
+		this.fastForwardMinTicks = fastForwardMinTicks;
+	}
 	/*
 	 * Getter and Setter Methods end
 	 */
@@ -364,6 +648,17 @@ public class Environment extends SimStateSweep {
 	}
 
 
+	/**
+	 * Constructor for headless runs (see HeadlessRun).  No run time file is read and no
+	 * observer is created; the caller attaches an Experimenter before start is called.
+	 * @param seed
+	 */
+	public Environment(long seed) {
+		super(seed);
+
+	}
+
+
 	public Environment(long seed, Class observer) {
 		super(seed, observer);
 
@@ -385,11 +680,20 @@ public class Environment extends SimStateSweep {
 		autoCalculateGame();
 		
 		calulateOfferList();//creates the list of possible offers and equitability index
+		openTrace();
+		agents = new AgentStore(strategyCounts ? 0 : n);
+		neighborhood = new MooreNeighborhood(sparseSpace);
+		mates = Mating.create(mating);
+		mutation = new RareEvent(geometricSampling);
+		dispersal = new RareEvent(geometricSampling);
+		globalDispersal = new RareEvent(geometricSampling);
 		int m = n/groups; //the initial number of agents in each group
+		population = 0;
 		for(int i=0;i<groups;i++) {
 			int x = random.nextInt(gridWidth);
 			int y = random.nextInt(gridHeight);
 			Bag g = new Bag(m);
+			StrategyCountGroup counts = strategyCounts ? new StrategyCountGroup(this, x, y) : null;
 			for(int j=0;j<m;j++) {
 				double offer,accept;
 				if(ugOfferZero) {
@@ -401,15 +705,38 @@ public class Environment extends SimStateSweep {
 					accept = offerArray[random.nextInt(offerArray.length)];
 				}
 
+				if(counts != null) {//no agents, only the number of members with each strategy
+					counts.add(this, offerIndex(offer) * offerArray.length + offerIndex(accept), true);
+					continue;
+				}
 				Agent a;
 				a = new Agent(this,offer,accept, true, 0.0, x, y);//start with the p = 0
-				a.event = schedule.scheduleRepeating(1,0,a);//schedule the agent
+				if(trace != null)
+					trace.birth(0, a, -1, x * gridHeight + y);//initial agents have no parent
+				if(lineageTracking)
+					a.lineage = new Lineage(null, 0, a.id);
+				if(eventDriven)
+					a.startEvents(1);
+				else
+					a.event = schedule.scheduleRepeating(1,0,a);//schedule the agent
 				g.add(a);//add agent to a Bag
 			}
-			Group group = new Group(this,x,y,g);//create a new group from the bag of agents
+			Group group = counts != null ? counts : new Group(this,x,y,g);//create a new group from the bag of agents
+			if(counts != null && !paramSweeps)
+				counts.setColor();
+			population += group.size();
 			group.event = schedule.scheduleRepeating(1.0, 1,group,scheduleTimeInterval);//schdule after agents
 			sparseSpace.setObjectLocation(group, x, y);//place that group randomly into space
 		}
+		if(strategyCounts)
+			schedule.scheduleRepeating(1.0, 0, new StrategyCountGroup.Members(), scheduleTimeInterval);//in place of the agents
+		if(gridSnapshotInterval > 0) {
+			try {
+				gridRecorder = new GridRecorder(gridSnapshotFile, gridWidth, gridHeight, offerArray);//recorded by the Experimenter
+			} catch (IOException e) {
+				System.err.println("Cannot open the grid snapshot "+gridSnapshotFile+": "+e);
+			}
+		}
 	}
 
 	/**
@@ -443,29 +770,97 @@ public class Environment extends SimStateSweep {
 	 * @return
 	 */
 	public void calulateOfferList() {
-		double[] array = new double[]{0.0,0.1,0.2,0.3,0.4,0.5,0.6,0.7,0.8,0.9,1.0};
-		if(n_intervals % 2 == 0) {
-			switch(this.n_intervals) {
-			case 4:array = new double[]{0.0,0.25,0.5,0.75,1.0};
-			break;
-			case 6:array = new double[]{0.0,0.166,0.3333333,0.5,0.666666667,0.833333333,1.0};
-			break;
-			case 8:array = new double[]{0.0,0.125,0.25,0.375,0.5,0.625,0.75,0.875,1.0};
-			break;
-			case 10:array = new double[]{0.0,0.1,0.2,0.3,0.4,0.5,0.6,0.7,0.8,0.9,1.0};
-			break;
-			case 12: array = new double[]{0.0,0.083333333,0.166666667,0.25,0.333333333,0.416666667,0.5,0.583333333,0.666666667,0.75,0.833333333,0.916666667,1.0};
-			break;
-			default:
+		double[] array;
+		switch(this.n_intervals) {//the lattices of earlier versions, so their runs can be repeated
+		case 4:array = new double[]{0.0,0.25,0.5,0.75,1.0};
+		break;
+		case 6:array = new double[]{0.0,0.166,0.3333333,0.5,0.666666667,0.833333333,1.0};
+		break;
+		case 8:array = new double[]{0.0,0.125,0.25,0.375,0.5,0.625,0.75,0.875,1.0};
+		break;
+		case 10:array = new double[]{0.0,0.1,0.2,0.3,0.4,0.5,0.6,0.7,0.8,0.9,1.0};
+		break;
+		case 12: array = new double[]{0.0,0.083333333,0.166666667,0.25,0.333333333,0.416666667,0.5,0.583333333,0.666666667,0.75,0.833333333,0.916666667,1.0};
+		break;
+		default:
+			if(n_intervals < 1 || n_intervals >= Short.MAX_VALUE) {
+				System.out.println("n_intervals must be from 1 to "+(Short.MAX_VALUE - 1)+", n_intervals = 10 by default is used.");
 				array = new double[]{0.0,0.1,0.2,0.3,0.4,0.5,0.6,0.7,0.8,0.9,1.0};
+				break;
 			}
-		}
-		else
-		{
-			System.out.println("n_intervals is not even, n_intervals = 10 by default is used.");
+			array = lattice(n_intervals);
 		}
 		offerArray = array;
 		offerIntervals = offerArray.length;
+		calculatePayoffTables();
+	}
+
+	/**
+	 * The uniform lattice of n intervals on [0, 1]: the n + 1 offers i / n.  Offers are
+	 * i / n rather than sums of steps, so the lattice ends exactly at 1 and has 0.5 when n
+	 * is even.
+	 * @param n
+	 * @return
+	 */
+	public static double[] lattice(int n) {
+		double[] array = new double[n + 1];
+		for(int i=0;i<=n;i++)
+			array[i] = i / (double)n;
+		return array;
+	}
+
+	/**
+	 * Calculates the payoff tables of the offer lattice, so that play only needs table
+	 * lookups.  Acceptance needs no table: the offer array is increasing, so the offer of
+	 * index o meets the accept of index a if o >= a.
+	 */
+	public void calculatePayoffTables() {
+		final int n = offerArray.length;
+		keepFraction = new double[n];
+		giveFraction = new double[n];
+		for(int o=0;o<n;o++) {
+			keepFraction[o] = 1 - offerArray[o];
+			giveFraction[o] = offerArray[o];
+		}
+	}
+
+	/**
+	 * Opens a new event trace if eventTrace is set, closing the files of a previous run.
+	 */
+	void openTrace() {
+		closeFiles();
+		nextAgentId = 0;
+		if(!eventTrace)
+			return;
+		try {
+			trace = new EventTrace(traceFile, traceCapacity, gridHeight, offerArray);
+		} catch (IOException e) {
+			System.err.println("Cannot open the event trace "+traceFile+": "+e);
+		}
+	}
+
+	void closeFiles() {
+		if(trace != null) {
+			trace.close();
+			trace = null;
+		}
+		if(gridRecorder != null) {
+			gridRecorder.close();
+			gridRecorder = null;
+		}
+	}
+
+	/**
+	 * Index of a value in the offer array. Values that are not in the array get the index
+	 * of the first larger value, the bin the value falls into.
+	 * @param value
+	 * @return
+	 */
+	public short offerIndex(double value) {
+		int i = Arrays.binarySearch(offerArray, value);
+		if(i < 0)
+			i = Math.min(-(i + 1), offerArray.length - 1);
+		return (short)i;
 	}
 
 
@@ -478,6 +873,10 @@ public class Environment extends SimStateSweep {
 
 		make2DSpace(spaces,gridWidth,gridHeight);//make the space
 		makeGroups();//make the groups
+		if(convergenceMonitor || adaptiveBurnIn) {//monitored runs change burnIn and simLength, so reset them for each run
+			simLength = (long)generations * (long)averageAge + 1;
+			burnIn = burinGenerations * (int)averageAge;
+		}
 
 		//experimenter stuff
 		if(observer != null) {
@@ -486,4 +885,12 @@ public class Environment extends SimStateSweep {
 		}
 
 	}
+
+	/**
+	 * Extention of finish method in SimState.  Closes the event trace and grid snapshot.
+	 */
+	public void finish() {
+		super.finish();
+		closeFiles();
+	}
 }
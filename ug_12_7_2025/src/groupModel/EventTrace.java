@@ -0,0 +1,178 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Trace of every agent birth and death, written as fixed width binary records to a memory
+ * mapped file.  The file is a ring of capacity records after a header: when it is full,
+ * the oldest records are overwritten.  The simulation thread is the only writer and a
+ * record is a few puts into the mapped buffer, so tracing does not slow the agents down;
+ * the operating system writes the pages to the file.  The header holds the number of
+ * records written so far, the grid height (groups are recorded by their cell) and the
+ * offer array (offers and accepts are recorded by their index); it grows by pages for
+ * offer arrays that do not fit in HEADER bytes.  Run main to convert a trace to CSV, from
+ * the oldest record kept to the newest.
+ *
+ * Record layout (little endian, RECORD bytes):
+ * type (byte), unused (byte), offer index (short), group cell (int),
+ * tick (long), id (long), parent id for births or age for deaths (long),
+ * resources (double, deaths), offspring (int, deaths), accept index (short), unused (short).
+ * Initial agents are recorded as births with parent id -1.
+ */
+public class EventTrace {
+	public static final int MAGIC = 0x55475432; //"UGT2"
+	public static final int HEADER = 4096; //least bytes before the first record
+	public static final int RECORD = 48; //bytes in a record
+	public static final byte BIRTH = 1;
+	public static final byte DEATH = 2;
+	static final int WRITTEN = 16; //header position of the number of records written
+
+	final RandomAccessFile file;
+	final MappedByteBuffer buffer;
+	final long capacity; //records in the ring
+	final int header; //bytes before the first record
+	long written = 0; //records written so far
+
+	/**
+	 * Creates (or replaces) a trace file.
+	 * @param fileName
+	 * @param capacity records kept, at most what fits in a 2 GB mapping
+	 * @param gridHeight
+	 * @param offerArray
+	 * @throws IOException
+	 */
+	public EventTrace(String fileName, long capacity, int gridHeight, double[] offerArray) throws IOException {
+		super();
+		header = header(offerArray.length);
+		this.capacity = Math.max(1, Math.min(capacity, (Integer.MAX_VALUE - header) / RECORD));
+		file = new RandomAccessFile(fileName, "rw");
+		file.setLength(0);
+		buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, header + this.capacity * RECORD);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, RECORD);
+		buffer.putLong(8, this.capacity);
+		buffer.putLong(WRITTEN, 0);
+		buffer.putInt(24, gridHeight);
+		buffer.putInt(28, offerArray.length);
+		for(int i=0;i<offerArray.length;i++)
+			buffer.putDouble(32 + 8 * i, offerArray[i]);
+	}
+
+	/**
+	 * Bytes before the first record for an offer array of levels offers: HEADER, or whole
+	 * pages of HEADER bytes if the offers do not fit.
+	 * @param levels
+	 * @return
+	 */
+	static int header(int levels) {
+		return (32 + 8 * levels + HEADER - 1) / HEADER * HEADER;
+	}
+
+	/**
+	 * Position of the next record, the oldest when the ring is full.
+	 * @return
+	 */
+	int next() {
+		return header + (int)(written % capacity) * RECORD;
+	}
+
+	public void birth(long tick, Agent child, long parent, int cell) {
+		final int p = next();
+		final MappedByteBuffer b = buffer;
+		b.put(p, BIRTH);
+		b.putShort(p + 2, child.offerIndex);
+		b.putInt(p + 4, cell);
+		b.putLong(p + 8, tick);
+		b.putLong(p + 16, child.id);
+		b.putLong(p + 24, parent);
+		b.putDouble(p + 32, 0.0);
+		b.putInt(p + 40, 0);
+		b.putShort(p + 44, child.acceptIndex);
+		b.putLong(WRITTEN, ++written);
+	}
+
+	public void death(long tick, Agent a, int cell) {
+		final int p = next();
+		final MappedByteBuffer b = buffer;
+		b.put(p, DEATH);
+		b.putShort(p + 2, a.offerIndex);
+		b.putInt(p + 4, cell);
+		b.putLong(p + 8, tick);
+		b.putLong(p + 16, a.id);
+		b.putLong(p + 24, a.getAge());
+		b.putDouble(p + 32, a.getResources());
+		b.putInt(p + 40, (int)a.offspring);
+		b.putShort(p + 44, a.acceptIndex);
+		b.putLong(WRITTEN, ++written);
+	}
+
+	/**
+	 * Writes the mapped pages to the file and closes it.
+	 */
+	public void close() {
+		buffer.force();
+		try {
+			file.close();
+		} catch (IOException e) {
+			System.err.println("Cannot close the event trace: "+e);
+		}
+	}
+
+	/**
+	 * Converts a trace to CSV.
+	 * @param in trace file
+	 * @param out CSV file
+	 * @return number of records converted
+	 * @throws IOException
+	 */
+	public static long toCSV(String in, String out) throws IOException {
+		try(RandomAccessFile f = new RandomAccessFile(in, "r")) {
+			MappedByteBuffer b = f.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, f.length());
+			b.order(ByteOrder.LITTLE_ENDIAN);
+			if(b.getInt(0) != MAGIC)
+				throw new IOException(in+" is not an event trace");
+			final int record = b.getInt(4);
+			final long capacity = b.getLong(8);
+			final long written = b.getLong(WRITTEN);
+			final int gridHeight = b.getInt(24);
+			final double[] offers = new double[b.getInt(28)];
+			for(int i=0;i<offers.length;i++)
+				offers[i] = b.getDouble(32 + 8 * i);
+			final int header = header(offers.length);
+			final long first = Math.max(0, written - capacity);//oldest record kept
+			try(PrintWriter w = new PrintWriter(new FileWriter(out))) {
+				w.println("event,tick,id,parent,age,offspring,resources,groupX,groupY,offer,accept");
+				for(long r=first;r<written;r++) {
+					final int p = header + (int)(r % capacity) * record;
+					final boolean birth = b.get(p) == BIRTH;
+					final int cell = b.getInt(p + 4);
+					final String life = birth ? b.getLong(p + 24)+",,," //parent
+							: ","+b.getLong(p + 24)+","+b.getInt(p + 40)+","+b.getDouble(p + 32);//age, offspring, resources
+					w.println((birth ? "birth" : "death")+","+b.getLong(p + 8)+","+b.getLong(p + 16)+","+life+","
+							+(cell / gridHeight)+","+(cell % gridHeight)+","
+							+offers[b.getShort(p + 2)]+","+offers[b.getShort(p + 44)]);
+				}
+			}
+			return written - first;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		String in = GUI.argumentForKey("-in", args);
+		String out = GUI.argumentForKey("-out", args);
+		long n = toCSV(in == null ? "trace.bin" : in, out == null ? "trace.csv" : out);
+		System.out.println(n+" records written to "+(out == null ? "trace.csv" : out));
+	}
+}
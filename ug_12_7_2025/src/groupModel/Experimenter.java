@@ -8,10 +8,16 @@ package groupModel;
  * The experimenter class extends the observer class in MASONplus7.  Experimenters
  * collect and save data to files.  They also manage charts.
  */
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import observer.Bin;
 import observer.Observer;
 import sim.util.Bag;
+import sim.util.DoubleBag;
+import sim.util.IntBag;
 import sim.engine.SimState;
+import sweep.GUIStateSweep;
 import sweep.ParameterSweeper;
 import sweep.SimStateSweep;
 
@@ -26,10 +32,10 @@ public class Experimenter extends Observer{
 	public double nR = 0.0;//number reject + not reject
 	public double nRG = 0.0;
 	public double nRs = 0.0; //number of possible rejection events sampled
-	public Bin fitness;//for binning agent fitness based on offer
-	public Bin offers;//frequency of offers
-	public Bin accepts;//frequency of accept thresholds
-	public Bin rejects; //frequency that offers are rejected
+	public LatticeHistogram fitness;//for binning agent fitness based on offer
+	public LatticeHistogram offers;//frequency of offers
+	public LatticeHistogram accepts;//frequency of accept thresholds
+	public LatticeHistogram rejects; //frequency that offers are rejected
 	public Bin clusters; //measures the density of groups for each group
 	double[] values = {1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20,21,22,23,24,25};
 	public Bin clusterOffers;//mean offer for cluster size
@@ -40,6 +46,18 @@ public class Experimenter extends Observer{
 	public double nAtTa = 0;//total agents at the selected round for accept
 	public double dispersion = 0.0;
 	public double dispersionN = 0.0;
+	public ArrayList<double[]> rows = null;//if not null, data rows are kept here instead of the data matrix (headless runs)
+	DoubleBag row = new DoubleBag();//the row being built by nextInterval
+	public ConvergenceMonitor monitor = new ConvergenceMonitor(3);//series of mean offer, mean accept and rejection rate
+	public long convergenceStep = -1;//step at which the series converged, -1 if not (yet)
+	public long burnInStep = -1;//adaptive burn in: step at which MSER-5 found the transient ended, -1 if not (yet)
+	public int fixedBurnIn = 0;//burn in of the fixed rule, burinGenerations * averageAge
+	double[] offerFrequency;//used by the monitor
+	double[] lineages;//offer lineages of each offer level
+	int lineageStamp = 0;//sample number of the genealogy walks
+	int founders = 0;//initial agents with living descendants in the last sample
+	double[] acceptFrequency;
+	transient ChartPublisher charts = null;//hands chart data to the Swing thread, made when charts are shown
 	/**
 	 * Experimenter constructor.
 	 * @param fileName
@@ -64,6 +82,17 @@ public class Experimenter extends Observer{
 		this.initializeAcceptBins(offerArray);
 		this.initializeRejectBins(offerArray);
 		this.intializeClusterBins(values);
+		monitor.clear();
+		convergenceStep = -1;
+		burnInStep = -1;
+		fixedBurnIn = state.burnIn;
+		if(state.adaptiveBurnIn)
+			state.burnIn = Integer.MAX_VALUE;//no data are collected until the transient ends
+		offerFrequency = new double[offerArray.length];
+		acceptFrequency = new double[offerArray.length];
+		lineages = new double[offerArray.length];
+		if(charts != null)
+			charts.clear();//points of the last simulation are not drawn in the new charts
 	}
 
 
@@ -104,11 +133,8 @@ public class Experimenter extends Observer{
 		Bag groups = state.sparseSpace.getAllObjects();
 		for(int i = 0;i<groups.numObjs;i++) {
 			Group g = (Group)groups.objs[i];
-			for(int j=0;j<g.members.numObjs;j++) {
-				Agent a = (Agent)g.members.objs[j];
-				offerAtT += a.offer;
-				nAtTo++;
-			}
+			offerAtT += g.offerSum();
+			nAtTo += g.size();
 		}
 		if(nAtTo>0)
 			return offerAtT/nAtTo;
@@ -125,11 +151,8 @@ public class Experimenter extends Observer{
 		Bag groups = state.sparseSpace.getAllObjects();
 		for(int i = 0;i<groups.numObjs;i++) {
 			Group g = (Group)groups.objs[i];
-			for(int j=0;j<g.members.numObjs;j++) {
-				Agent a = (Agent)g.members.objs[j];
-				acceptAtT += a.accept;
-				nAtTa++;
-			}
+			acceptAtT += g.acceptSum();
+			nAtTa += g.size();
 		}
 		if(nAtTa>0)
 			return acceptAtT/nAtTa;
@@ -148,19 +171,19 @@ public class Experimenter extends Observer{
 	}
 
 	public void initializeFitnessBins(double[] mutationArray) {
-		fitness = new Bin(mutationArray);
+		fitness = new LatticeHistogram(mutationArray);
 	}
 
 	public void initializeOfferBins(double[] mutationArray) {
-		offers= new Bin(mutationArray);
+		offers= new LatticeHistogram(mutationArray);
 	}
 	
 	public void initializeAcceptBins(double[] mutationArray) {
-		accepts= new Bin(mutationArray);
+		accepts= new LatticeHistogram(mutationArray);
 	}
 	
 	public void initializeRejectBins(double[] mutationArray) {
-		rejects= new Bin(mutationArray);
+		rejects= new LatticeHistogram(mutationArray);
 	}
 
 	public void intializeClusterBins(double[] values) {
@@ -184,7 +207,7 @@ public class Experimenter extends Observer{
 		double n = 0;
 		for(int i=0;i<cluster.numObjs;i++) {
 			Group g = (Group)cluster.objs[i];
-			n+= g.members.numObjs;
+			n+= g.size();
 		}
 		return n;
 	}
@@ -194,12 +217,8 @@ public class Experimenter extends Observer{
 		double offer =0.0;
 		for(int i=0;i<cluster.numObjs;i++) {
 			Group g = (Group)cluster.objs[i];
-			n+= g.members.numObjs;
-			for(int j=0;j<g.members.numObjs;j++) {
-				Agent a = (Agent)g.members.objs[j];
-				offer += a.offer;
-
-			}
+			n+= g.size();
+			offer += g.offerSum();
 		}
 		if(n >0)
 			return offer/n;
@@ -256,29 +275,29 @@ public class Experimenter extends Observer{
 		if(state.burnIn <= state.schedule.getSteps()) {
 			//this.initializeRejectBins(state.offerArray);//We need to do this because we are doing sampling
 			nRs = 0.0; //reset to zero for next sample
-			Bag population = new Bag();
+			final int levels = state.offerArray.length;
+			IntBag population = new IntBag();//strategies, offerIndex * levels + acceptIndex
 			Bag allGroups = state.sparseSpace.getAllObjects();
 			for(int i=0;i<allGroups.numObjs;i++) {
 				Group g = (Group)allGroups.objs[i];
-				for (int j=0;j<g.members.numObjs;j++)
-					population.add(g.members.objs[j]);
+				g.addStrategies(population, levels);
 			}
-			Bag sample = new Bag();
+			IntBag sample = new IntBag();
 			population.shuffle(state.random);//randomly shuffle population
 			int i = 0;
-			while(population.numObjs>0 && i < state.rejectionSampleSize) {
+			while(i < population.numObjs && i < state.rejectionSampleSize) {
 				sample.add(population.objs[i]);
 				i++;
 			}
 
-			Bag proposers = new Bag();
-			Bag recipients = new Bag();
+			IntBag proposers = new IntBag();
+			IntBag recipients = new IntBag();
 			if(!(sample.numObjs >= state.rejectionSampleSize)) {
 				System.out.println(sample.numObjs);
 				return 0;
 			}
 			sample.shuffle(state.random);
-			for(int j = 0;j< sample.numObjs;j+=2) {
+			for(int j = 0;j+1< sample.numObjs;j+=2) {
 				proposers.add(sample.objs[j]);
 				recipients.add(sample.objs[j+1]);
 			}
@@ -288,13 +307,12 @@ public class Experimenter extends Observer{
 
 			double reject = 0.0, n = 0.0;
 			for(int j =0; j< proposers.numObjs;j++) {
-				Agent p = (Agent)proposers.objs[j];
-				Agent r =  (Agent)recipients.objs[j];
-				if(!(p.offer >= r.accept)) {
+				final int p = proposers.objs[j] / levels;//offer index of the proposer
+				final int r = recipients.objs[j] % levels;//accept index of the recipient
+				final boolean rejected = p < r;//the lattice is increasing, so offer p meets the accepts up to p
+				if(rejected)
 					reject++;
-					rejects.binData(p.offer);
-				}
-				rejects.binDataN(p.offer);
+				rejects.add(p, rejected ? 1 : 0);
 				n++;
 			}
 			double x = reject/n;
@@ -315,33 +333,55 @@ public class Experimenter extends Observer{
 	
 	public void recordOffspring(Agent a) {
 		if(state.burnIn <= state.schedule.getSteps()) {
-			fitness.binData(a.offer, a.offspring);
+			fitness.add(a.offerIndex, a.offspring);//offer bins are the offer array
 
 		}
 	}
 
 	public void recordOffer(Agent a) {
 		if(state.burnIn <= state.schedule.getSteps()) {
-			offer+= a.offer;
+			offer+= a.getOffer();
 			nO++;
 		}
 	}
 
 	public void recordOffers(Agent a) {
-		if(state.burnIn <= state.schedule.getSteps())
-			offers.binDataF(a.offer);
+		if(state.burnIn <= state.schedule.getSteps()) {
+			offers.add(a.offerIndex, 1);
+		}
 	}
 	
 	public void recordAccept(Agent a) {
 		if(state.burnIn <= state.schedule.getSteps()) {
-			accept+= a.accept;
+			accept+= a.getAccept();
 			nA++;
 		}
 	}
 
 	public void recordAccepts(Agent a) {
-		if(state.burnIn <= state.schedule.getSteps())
-			accepts.binDataF(a.accept);
+		if(state.burnIn <= state.schedule.getSteps()) {
+			accepts.add(a.acceptIndex, 1);
+		}
+	}
+
+	/**
+	 * Records the deaths of k members of a StrategyCountGroup with the same strategy, as
+	 * recordOffspring, recordOffers, recordOffer, recordAccepts and recordAccept do for an agent.
+	 * @param offerIndex
+	 * @param acceptIndex
+	 * @param k number of deaths
+	 * @param offspring offspring of each member that died
+	 */
+	public void recordDeaths(int offerIndex, int acceptIndex, int k, double offspring) {
+		if(state.burnIn <= state.schedule.getSteps()) {
+			fitness.add(offerIndex, k * offspring, k);
+			offers.add(offerIndex, k, k);
+			accepts.add(acceptIndex, k, k);
+			offer += k * state.offerArray[offerIndex];
+			nO += k;
+			accept += k * state.offerArray[acceptIndex];
+			nA += k;
+		}
 	}
 
 	public void recordDispersion(boolean dispersed) {
@@ -381,18 +421,25 @@ public class Experimenter extends Observer{
 
 		for(int i=0; i< agents.numObjs; i++) {
 			Group g = (Group)agents.objs[i];
-			for(int j=0;j<g.members.numObjs;j++) {
-				Agent a = (Agent)g.members.objs[j];
-				if(a.offer > 0) {
-					sum += 1.0;
-					sum2 += 1.0;//since it is 1, we waste nothing by not squaring
-				}
-				n++;
-			}
+			final int positive = g.size() - g.countOffer(0);//offers > 0
+			sum += positive;
+			sum2 += positive;//since it is 1, we waste nothing by not squaring
+			n += g.size();
 		}
 		return variance( sum, sum2, n);
 	}
 
+	/**
+	 * Adds a value to the data matrix or, for headless runs, to the current row.
+	 * @param value
+	 */
+	void add(double value) {
+		if(rows != null)
+			row.add(value);
+		else
+			data.add(value);
+	}
+
 	/**
 	 * This method saves data to a data matrix for later saving to file if
 	 * parameter sweeps are run.
@@ -401,72 +448,117 @@ public class Experimenter extends Observer{
 	public boolean nextInterval() {
 		if(!state.paramSweeps)
 			return false; //exit if we are not saving data in a sweep
-		data.add((double)(state.sparseSpace.getAllObjects().numObjs));//add the number of groups
-		data.add(offers.getMean());//add average offer
-		data.add(offers.getSD());
-		data.add(getMeanOfferAtT(state));
-		data.add(accepts.getMean());//add average accept
-		data.add(accepts.getSD());
-		data.add(getMeanAcceptAtT(state));
-		data.add(sampleRejection(state));
+		row.clear();
+		if(rows != null)
+			row.add(state.schedule.getSteps());//headless rows start with the step
+		add((double)(state.sparseSpace.getAllObjects().numObjs));//add the number of groups
+		add(offers.getMean());//add average offer
+		add(offers.getSD());
+		add(getMeanOfferAtT(state));
+		add(accepts.getMean());//add average accept
+		add(accepts.getSD());
+		add(getMeanAcceptAtT(state));
+		add(sampleRejection(state));
 		//offer distribution
-		double[] offerDis = offers.getFrequencyDis();
+		double[] offerDis = offers.frequencies(state.outputBins);
 		for(int i=0;i<offerDis.length;i++) {
-			data.add(offerDis[i]);
+			add(offerDis[i]);
 		}
 		//rejection distribution
-		double[] rejectDis = rejects.bin;
-		double[] rejectDisN = rejects.binN;
+		double[] rejectDis = rejects.rates(state.outputBins);
 		for(int i=0;i<rejectDis.length;i++) {
-			if(rejectDisN[i] > 0)
-				data.add(rejectDis[i]/rejectDisN[i]);
-			else
-				data.add(0.0);
+			add(rejectDis[i]);
 		}
 		//accept distribution
-		double[] acceptDis = accepts.getFrequencyDis();
+		double[] acceptDis = accepts.frequencies(state.outputBins);
 		for(int i=0;i<acceptDis.length;i++) {
-			data.add(acceptDis[i]);
+			add(acceptDis[i]);
 		}
 		
-		data.add(meanDispersion() );
+		add(meanDispersion() );
 		getClusterSizes( state);
 		double[] fCluster = clusters.getFrequencyDis();
 		double[] meanOffers = this.clusterOffers.getMeanDis();
 		double[] meanNumAgents = this.clusterN.getMeanDis();
-		data.add(clusters.getMean(fCluster));
-		data.add(Math.sqrt(clusters.getVariance(fCluster)));//standard deviation
+		add(clusters.getMean(fCluster));
+		add(Math.sqrt(clusters.getVariance(fCluster)));//standard deviation
 		for(int i=0;i<fCluster.length;i++) {
-			data.add(fCluster[i]);
+			add(fCluster[i]);
 		}
 		for(int i=0;i<meanOffers.length;i++) {
-			data.add(meanOffers[i]);
+			add(meanOffers[i]);
 		}
 		for(int i=0;i<meanNumAgents.length;i++) {
-			data.add(meanNumAgents[i]);
+			add(meanNumAgents[i]);
+		}
+		if(state.convergenceMonitor)
+			add(convergenceStep);
+		if(state.adaptiveBurnIn) {
+			add(burnInStep);
+			add(fixedBurnIn);
+		}
+		if(state.lineageTracking) {
+			add(sampleLineages(state));
+			add(founders);
+			double[] lineageDis = offers.coarsen(lineages, state.outputBins);
+			for(int i=0;i<lineageDis.length;i++)
+				add(lineageDis[i]);
 		}
 		reSetAtT();//reset for next time
+		if(rows != null)
+			rows.add(row.toArray());
 
 		return true;	
 	}
 
 	/**
-	 * Calculates mean offer for time series chart.
+	 * Walks the genealogy of the living agents, counting the offer lineages of each offer
+	 * level (agents with the offer that descend from different mutations to it) into
+	 * lineages and the initial agents with living descendants into founders.  Until a
+	 * single founder is left there is no common ancestor, so founders is the measure of
+	 * coalescence then.
+	 * @param state
+	 * @return ticks since the birth of the most recent common ancestor of the living
+	 * agents, -1 if they descend from different initial agents
+	 */
+	public double sampleLineages(Environment state) {
+		Bag groups = state.sparseSpace.getAllObjects();
+		int n = 0;
+		for(int i=0;i<groups.numObjs;i++)
+			n += ((Group)groups.objs[i]).members.numObjs;//strategy count groups have no agents
+		Lineage[] nodes = new Lineage[n];
+		int[] offerIndex = new int[n];
+		n = 0;
+		for(int i=0;i<groups.numObjs;i++) {
+			Bag members = ((Group)groups.objs[i]).members;
+			for(int j=0;j<members.numObjs;j++) {
+				Agent a = (Agent)members.objs[j];
+				if(a.lineage == null)
+					continue;
+				nodes[n] = a.lineage;
+				offerIndex[n++] = a.offerIndex;
+			}
+		}
+		Lineage.countOrigins(nodes, offerIndex, n, lineages);
+		final long mrca = Lineage.mrcaBirth(nodes, n, ++lineageStamp);
+		founders = Lineage.countFounders(nodes, n, ++lineageStamp);
+		return mrca < 0 ? -1 : state.schedule.getSteps() - mrca;
+	}
+
+	/**
+	 * Calculates mean offer, mean accept and rejection rate for the time series charts.
 	 * @param state
+	 * @param f
 	 */
-	public void meanOfferAcceptance(Environment state) {
+	public void meanOfferAcceptance(Environment state, ChartPublisher.Frame f) {
 		double offer = 0, accept=0.0;
 		Bag agents = state.sparseSpace.getAllObjects();
 		int n = 0;
 		for(int i=0; i< agents.numObjs; i++) {
 			Group g = (Group)agents.objs[i];
-			for(int j=0;j<g.members.numObjs;j++) {
-				Agent a = (Agent)g.members.objs[j];
-				offer += a.currentOffer;
-				if(a.accept > 0)
-					accept+= a.accept;
-				n++;
-			}
+			offer += g.currentOfferSum();
+			accept += g.acceptSum();
+			n += g.size();
 
 		}
 		offer = offer/(double)n;
@@ -475,10 +567,7 @@ public class Experimenter extends Observer{
 		this.rejectG=0.0;
 		this.nRG = 0.0;
 
-		double time = (double)state.schedule.getTime();//get the current time
-		this.upDateTimeChart(0,time, offer, true, 1000);//update the chart with up to a 1000 milisecond delay
-		this.upDateTimeChart(1,time, accept, true, 1000);//update the chart with up to a 1000 milisecond delay
-		this.upDateTimeChart(2,time, reject, true, 1000);//update the chart with up to a 1000 milisecond delay
+		f.add(state.schedule.getTime(), offer, accept, reject);
 	}
 
 	public double meanOffer() {
@@ -493,57 +582,149 @@ public class Experimenter extends Observer{
 		Bag agents = state.sparseSpace.getAllObjects();
 		for(int i=0; i< agents.numObjs; i++) {
 			Group g = (Group)agents.objs[i];
-			n+=g.members.numObjs;
+			n+=g.size();
 		}
 		return n;
 	}
 
 	/**
-	 * Plots the fequency distribution of agents for offer levels.
+	 * Counts the agents at each level of the offers they made and of their accepts for the
+	 * histogram charts.
 	 * @param state
+	 * @param f
 	 */
-	public void offerLevels(Environment state) {
+	public void offerAcceptLevels(Environment state, ChartPublisher.Frame f) {
 		Bag agents = state.sparseSpace.getAllObjects();
-		int n = countAgents(state);
-		double[] data = new double[n];
-		int k = 0;
-		for(int i=0;i<agents.numObjs;i++) {
-			Group g = (Group)agents.objs[i];
-
-			for(int j=0;j<g.members.numObjs;j++) {
-				Agent a = (Agent)g.members.objs[j];
-				data[k] = a.currentOffer;
-				k++;
-			}
+		f.clearLevels(state.offerArray);
+		for(int i=0;i<agents.numObjs;i++)
+			((Group)agents.objs[i]).countCurrentOffers(f.offerCounts, f.acceptCounts);
+	}
 
-		} 
 
-		this.upDateHistogramChart(0,(int)state.schedule.getSteps(), data, 1000);//give it the data with a 1000 milisecond delay
-	}
-	
 	/**
-	 * Plots the fequency distribution of agents for offer levels.
+	 * Samples the mean offer, mean accept and expected rejection rate of random pairs
+	 * for the convergence monitor. The rejection rate is calculated from the offer and
+	 * accept frequencies, so monitoring does not draw random numbers and does not change
+	 * the course of a simulation.
 	 * @param state
 	 */
-	public void acceptLevels(Environment state) {
-		Bag agents = state.sparseSpace.getAllObjects();
-		int n = countAgents(state);
-		double[] data = new double[n];
-		int k = 0;
-		for(int i=0;i<agents.numObjs;i++) {
-			Group g = (Group)agents.objs[i];
+	public void sampleConvergence(Environment state) {
+		double[] oA = state.offerArray;
+		Arrays.fill(offerFrequency, 0.0);
+		Arrays.fill(acceptFrequency, 0.0);
+		double offer = 0, accept = 0, n = 0;
+		Bag groups = state.sparseSpace.getAllObjects();
+		for(int i=0;i<groups.numObjs;i++) {
+			Group g = (Group)groups.objs[i];
+			offer += g.offerSum();
+			accept += g.acceptSum();
+			g.countStrategies(offerFrequency, acceptFrequency);
+			n += g.size();
+		}
+		if(n == 0)
+			return;
+		double reject = 0, higher = 0;//higher is the frequency of accepts above the offer
+		for(int i=oA.length-1;i>=0;i--) {
+			reject += offerFrequency[i] * higher;
+			higher += acceptFrequency[i];
+		}
+		monitor.add(offer/n, accept/n, reject/(n*n));
+	}
 
-			for(int j=0;j<g.members.numObjs;j++) {
-				Agent a = (Agent)g.members.objs[j];
-				data[k] = a.accept;
-				k++;
-			}
+	/**
+	 * Adds samples to the monitor every convergenceInterval steps, and tests for the end of
+	 * the transient (adaptive burn in) and for convergence until they are found.  A run that
+	 * was shortened by either test is ended at its new simLength.
+	 * @param state
+	 */
+	public void monitorSeries(Environment state) {
+		final long steps = state.schedule.getSteps();
+		if(state.adaptiveBurnIn && state.burnIn == Integer.MAX_VALUE && steps >= fixedBurnIn) {
+			state.burnIn = fixedBurnIn;//no transient found, fall back on the fixed rule
+			System.out.println("No end of transient found by step "+steps+", using the fixed burn in");
+		}
+		final boolean burnInDone = !state.adaptiveBurnIn || state.burnIn < Integer.MAX_VALUE;
+		final boolean convergenceDone = !state.convergenceMonitor || convergenceStep >= 0;
+		if(burnInDone && convergenceDone) {
+			if(steps >= state.simLength - 1)
+				state.schedule.clear();//end of the shortened run
+			return;
+		}
+		final int interval = state.convergenceInterval > 0 ? state.convergenceInterval : (int)state.averageAge;
+		if(steps % interval != 0)
+			return;
+		sampleConvergence(state);
+		if(!burnInDone)
+			detectBurnIn(state, steps, interval);
+		if(!convergenceDone)
+			monitorConvergence(state, steps);
+	}
 
-		} 
+	/**
+	 * Adaptive burn in.  Once there are burnInMinSamples samples and MSER-5 finds the end of
+	 * the transient in every series, data collection starts and the simulation runs for the
+	 * generations of data collection, generations - burinGenerations.
+	 * @param state
+	 * @param steps
+	 * @param interval steps between samples
+	 */
+	public void detectBurnIn(Environment state, long steps, int interval) {
+		if(monitor.size() < state.burnInMinSamples)
+			return;
+		int t = monitor.transient5();
+		if(t < 0)
+			return;
+		burnInStep = steps - (long)(monitor.size() - 1 - t) * interval;
+		collectFrom(state, steps);
+		System.out.println("Transient ended at step "+burnInStep+", collecting data from step "+steps+" (fixed burn in "+fixedBurnIn+")");
+	}
 
-		this.upDateHistogramChart(2,(int)state.schedule.getSteps(), data, 1000);//give it the data with a 1000 milisecond delay
+	/**
+	 * Ends the burn in at steps and sets simLength so that the simulation runs for the
+	 * generations of data collection, rounded up to the next sampling interval so that the
+	 * last interval is recorded.
+	 * @param state
+	 * @param steps
+	 */
+	void collectFrom(Environment state, long steps) {
+		final long interval = state.dataSamplingInterval;
+		long end = steps + (long)(state.generations - state.burinGenerations) * (long)state.averageAge;
+		if(interval > 0)
+			end = (end + interval - 1) / interval * interval;
+		state.burnIn = (int)steps;
+		state.simLength = end + 1;
 	}
 
+	/**
+	 * Tests for convergence. When the series have converged after the burn in, the
+	 * simulation either stops (stopAtConvergence) or runs on.  If that is before the burn
+	 * in, the burn in ends, and the simulation runs for one full sampling interval of data
+	 * (stopAtConvergence) or for the generations of data collection.  Without
+	 * stopAtConvergence and with an adaptive burn in, data collection is left to
+	 * detectBurnIn.
+	 * @param state
+	 * @param steps
+	 */
+	public void monitorConvergence(Environment state, long steps) {
+		if(monitor.converged(state.convergenceWindow, state.convergenceZ)) {
+			convergenceStep = steps;
+			System.out.println("Converged at step "+steps);
+			if(state.stopAtConvergence && steps >= state.burnIn) {
+				if(steps % state.dataSamplingInterval != 0)
+					nextInterval();//the last row
+				state.schedule.clear();
+			}
+			else if(state.stopAtConvergence) {//no data yet, so collect them for one sampling interval
+				collectFrom(state, steps);
+				final long interval = state.dataSamplingInterval;
+				if(interval > 0)
+					state.simLength = Math.min(state.simLength, (steps + 2 * interval - 1) / interval * interval + 1);
+			}
+			else if(!state.adaptiveBurnIn && steps < state.burnIn) {
+				collectFrom(state, steps);
+			}
+		}
+	}
 
 	/**
 	 * Step method for experimenter, which handles collecting and displaying data.
@@ -552,12 +733,20 @@ public class Experimenter extends Observer{
 		super.step(this.state);
 		if(step %this.state.dataSamplingInterval == 0) {//If a sampling interval, record data{
 			nextInterval();
-			if(this.state.gui.arrayChartTypeXY )//only if true
-				meanOfferAcceptance(this.state);
-			if(this.state.gui.arrayChartTypeH) {//only if true
-				offerLevels(this.state);
-				acceptLevels(this.state);
+			if(GUIStateSweep.arrayChartTypeXY || GUIStateSweep.arrayChartTypeH) {//charts are drawn on the Swing thread
+				if(charts == null)
+					charts = new ChartPublisher();
+				ChartPublisher.Frame f = charts.begin(this.state.schedule.getSteps());
+				if(GUIStateSweep.arrayChartTypeXY )//only if true
+					meanOfferAcceptance(this.state, f);
+				if(GUIStateSweep.arrayChartTypeH)//only if true
+					offerAcceptLevels(this.state, f);
+				charts.publish(f);
 			}
 		}
+		if(this.state.convergenceMonitor || this.state.adaptiveBurnIn)
+			monitorSeries(this.state);
+		if(this.state.gridRecorder != null && this.state.schedule.getSteps() % this.state.gridSnapshotInterval == 0)
+			this.state.gridRecorder.record(this.state);//no schedule entry of its own, which would change the order of play
 	}
 }
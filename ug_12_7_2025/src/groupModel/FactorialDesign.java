@@ -0,0 +1,35 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.util.ArrayList;
+
+/**
+ * Full factorial design over the listed values of every swept parameter. The cell index
+ * is read as a mixed radix number, the last parameter varying fastest, which gives the same
+ * order as the Cartesian table of the MASONplus parameter sweeps.
+ */
+public class FactorialDesign extends DesignSpace {
+	long[] stride; //number of cells spanned by one step of each parameter
+	long size = 1;
+
+	public FactorialDesign(ArrayList<ArrayList<Object>> swept) {
+		super(swept);
+		stride = new long[names.length];
+		for(int i=names.length-1;i>=0;i--) {
+			stride[i] = size;
+			size = Math.multiplyExact(size, (long)levels[i].length);
+		}
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public Object value(long cell, int dimension) {
+		return levels[dimension][(int)((cell / stride[dimension]) % levels[dimension].length)];
+	}
+}
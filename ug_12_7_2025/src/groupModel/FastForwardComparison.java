@@ -0,0 +1,88 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.util.ArrayList;
+
+import sweep.LoadSimulation;
+
+/**
+ * Compares fast forward runs with exact (event driven) runs of the same parameters.
+ * Replicates of both modes are run with the same seeds, and for every column of the last
+ * data row the means of the two modes are compared with Welch's t statistic.  Columns
+ * with |t| above 3 are marked.
+ */
+public class FastForwardComparison {
+
+	/**
+	 * Runs replicates of one mode and returns the last data row of each.
+	 * @param fixed
+	 * @param fastForward
+	 * @param reps
+	 * @param seed
+	 * @return
+	 */
+	static double[][] lastRows(ArrayList<ArrayList<Object>> fixed, boolean fastForward, int reps, long seed) {
+		ArrayList<ArrayList<Object>> mode = new ArrayList<ArrayList<Object>>();
+		mode.add(SweepTask.parameter("boolean", "eventDriven", Boolean.TRUE));
+		mode.add(SweepTask.parameter("boolean", "fastForward", fastForward));
+		double[][] last = new double[reps][];
+		long time = System.currentTimeMillis();
+		for(int r=0;r<reps;r++) {
+			ArrayList<double[]> rows = HeadlessRun.run(fixed, mode, SweepTask.seed(seed, 0, r));
+			last[r] = rows.get(rows.size() - 1);
+		}
+		System.out.println((fastForward ? "Fast forward: " : "Exact: ")+(System.currentTimeMillis() - time)+" ms for "+reps+" replicates");
+		return last;
+	}
+
+	static double mean(double[][] x, int column) {
+		double sum = 0;
+		for(int i=0;i<x.length;i++)
+			sum += x[i][column];
+		return sum / x.length;
+	}
+
+	static double variance(double[][] x, int column) {
+		double m = mean(x, column);
+		double ss = 0;
+		for(int i=0;i<x.length;i++)
+			ss += (x[i][column] - m) * (x[i][column] - m);
+		return ss / (x.length - 1);
+	}
+
+	public static void main(String[] args) throws Exception {
+		String script = GUI.argumentForKey("-script", args);
+		String reps = GUI.argumentForKey("-reps", args);
+		String seed = GUI.argumentForKey("-seed", args);
+		String runFile = GUI.argumentForKey("-runfile", args);
+
+		ArrayList<ArrayList<Object>> table = LoadSimulation.convertValues(LoadSimulation.clean(
+				LoadSimulation.tokenize(new FastForwardComparison(), script == null ? "script.txt" : script)));
+		ArrayList<ArrayList<Object>> fixed = new ArrayList<ArrayList<Object>>();
+		DesignSpace.split(table, fixed);//swept parameters are left at their defaults
+		int n = reps == null ? 10 : Integer.parseInt(reps);
+		long base = seed == null ? System.currentTimeMillis() : Long.parseLong(seed);
+		String[] headers = runFile == null ? null : SweepCoordinator.columnHeaders(runFile);
+
+		double[][] exact = lastRows(fixed, false, n, base);
+		double[][] fast = lastRows(fixed, true, n, base);
+		int columns = Math.min(exact[0].length, fast[0].length);
+		int differ = 0;
+		System.out.println("column\texact\tfast forward\tt");
+		for(int c=1;c<columns;c++) {//column 0 is the step
+			double me = mean(exact, c), mf = mean(fast, c);
+			double se = Math.sqrt(variance(exact, c) / n + variance(fast, c) / n);
+			double t = se > 0 ? (mf - me) / se : (mf == me ? 0 : Double.POSITIVE_INFINITY);
+			String name = headers != null && c - 1 < headers.length ? headers[c - 1] : Integer.toString(c);
+			boolean flag = Math.abs(t) > 3;
+			if(flag)
+				differ++;
+			System.out.println(name+"\t"+String.format("%.6f", me)+"\t"+String.format("%.6f", mf)+"\t"+String.format("%.2f", t)+(flag ? "\t*" : ""));
+		}
+		System.out.println(differ+" of "+(columns - 1)+" columns differ (|t| > 3)");
+	}
+}
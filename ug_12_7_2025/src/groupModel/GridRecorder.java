@@ -0,0 +1,148 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import sim.util.Bag;
+
+/**
+ * Headless recorder of the group grid.  Every gridSnapshotInterval ticks, the Experimenter
+ * has it append a frame to gridSnapshotFile with the size, mean offer and mean accept of
+ * the group in each occupied cell.  The recorder has no schedule entry of its own, which
+ * would change the order in which MASON steps agents and groups, and so the results.  A
+ * frame only has the cells that changed since the previous frame (a size of 0 for cells
+ * that were emptied), so a stable grid costs a few bytes per frame.  GridRenderer turns
+ * the file into PNG images.
+ *
+ * File layout (big endian): MAGIC, width, height, number of offers, the offer array, then
+ * the frames: tick (long), number of changed cells (varint), and for each changed cell in
+ * increasing order the gap from the previous changed cell (varint), the group size
+ * (varint) and, if it is not 0, the mean offer and mean accept (floats).
+ */
+public class GridRecorder {
+	public static final int MAGIC = 0x55474744; //"UGGD"
+	transient DataOutputStream out;
+	final int width;
+	final int height;
+	int[] size; //of the group in each cell in the previous frame
+	float[] offer; //mean offer in each cell in the previous frame
+	float[] accept;
+	int[] newSize; //the frame being made
+	float[] newOffer;
+	float[] newAccept;
+	int frames = 0;
+
+	public GridRecorder(String fileName, int width, int height, double[] offerArray) throws IOException {
+		super();
+		this.width = width;
+		this.height = height;
+		final int cells = width * height;
+		size = new int[cells];
+		offer = new float[cells];
+		accept = new float[cells];
+		newSize = new int[cells];
+		newOffer = new float[cells];
+		newAccept = new float[cells];
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(width);
+		out.writeInt(height);
+		out.writeInt(offerArray.length);
+		for(int i=0;i<offerArray.length;i++)
+			out.writeDouble(offerArray[i]);
+	}
+
+	/**
+	 * Appends a frame of the grid.
+	 * @param eState
+	 */
+	public void record(Environment eState) {
+		if(out == null)
+			return;//closed, or a snapshot fork
+		Arrays.fill(newSize, 0);
+		Bag groups = eState.sparseSpace.getAllObjects();
+		for(int i=0;i<groups.numObjs;i++) {
+			Group g = (Group)groups.objs[i];
+			final int n = g.size();
+			if(n == 0)
+				continue;
+			final int cell = g.x * height + g.y;
+			newSize[cell] = n;
+			newOffer[cell] = (float)(g.offerSum() / n);
+			newAccept[cell] = (float)(g.acceptSum() / n);
+		}
+		int changed = 0;
+		for(int c=0;c<newSize.length;c++) {
+			if(changed(c))
+				changed++;
+		}
+		try {
+			out.writeLong(eState.schedule.getSteps());
+			writeVarint(out, changed);
+			int previous = -1;
+			for(int c=0;c<newSize.length;c++) {
+				if(!changed(c))
+					continue;
+				writeVarint(out, c - previous - 1);
+				writeVarint(out, newSize[c]);
+				if(newSize[c] > 0) {
+					out.writeFloat(newOffer[c]);
+					out.writeFloat(newAccept[c]);
+				}
+				previous = c;
+			}
+		} catch (IOException e) {
+			System.err.println("Cannot write the grid snapshot: "+e);
+			close();
+			return;
+		}
+		int[] s = size; size = newSize; newSize = s;
+		float[] o = offer; offer = newOffer; newOffer = o;
+		float[] a = accept; accept = newAccept; newAccept = a;
+		frames++;
+	}
+
+	boolean changed(int c) {
+		if(newSize[c] != size[c])
+			return true;
+		return newSize[c] > 0 && (newOffer[c] != offer[c] || newAccept[c] != accept[c]);
+	}
+
+	public void close() {
+		if(out == null)
+			return;
+		try {
+			out.close();
+		} catch (IOException e) {
+			System.err.println("Cannot close the grid snapshot: "+e);
+		}
+		out = null;
+	}
+
+	static void writeVarint(DataOutputStream out, int v) throws IOException {
+		while((v & ~0x7F) != 0) {
+			out.writeByte((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+
+	static int readVarint(DataInputStream in) throws IOException {
+		int v = 0;
+		for(int shift=0;;shift+=7) {
+			final int b = in.readUnsignedByte();
+			v |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0)
+				return v;
+		}
+	}
+}
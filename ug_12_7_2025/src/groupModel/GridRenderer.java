@@ -0,0 +1,99 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Offline renderer of the frames written by GridRecorder.  Each frame becomes a PNG image
+ * of the grid with a circle for each group, colored by its mean offer as in the GUI
+ * (Group.color), with a diameter that grows with the square root of the group size up to
+ * maxSize.  Images are named frame_<tick>.png.
+ */
+public class GridRenderer {
+
+	/**
+	 * Renders all frames of a grid snapshot file.
+	 * @param in
+	 * @param dir directory of the images
+	 * @param scale pixels per cell
+	 * @param maxSize group size drawn as a full cell
+	 * @return number of frames
+	 * @throws IOException
+	 */
+	public static int render(String in, File dir, int scale, int maxSize) throws IOException {
+		dir.mkdirs();
+		try(DataInputStream data = new DataInputStream(new BufferedInputStream(new FileInputStream(in), 1 << 16))) {
+			if(data.readInt() != GridRecorder.MAGIC)
+				throw new IOException(in+" is not a grid snapshot file");
+			final int width = data.readInt();
+			final int height = data.readInt();
+			double[] offerArray = new double[data.readInt()];
+			for(int i=0;i<offerArray.length;i++)
+				offerArray[i] = data.readDouble();
+			int[] size = new int[width * height];
+			float[] offer = new float[width * height];
+			int frames = 0;
+			while(true) {
+				long tick;
+				try {
+					tick = data.readLong();
+				} catch (EOFException e) {
+					return frames;
+				}
+				final int changed = GridRecorder.readVarint(data);
+				int c = -1;
+				for(int i=0;i<changed;i++) {
+					c += GridRecorder.readVarint(data) + 1;
+					size[c] = GridRecorder.readVarint(data);
+					if(size[c] > 0) {
+						offer[c] = data.readFloat();
+						data.readFloat();//mean accept, not drawn
+					}
+				}
+				BufferedImage image = new BufferedImage(width * scale, height * scale, BufferedImage.TYPE_INT_RGB);
+				Graphics2D g = image.createGraphics();
+				g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+				g.setColor(Color.WHITE);
+				g.fillRect(0, 0, width * scale, height * scale);
+				for(int cell=0;cell<size.length;cell++) {
+					if(size[cell] == 0)
+						continue;
+					final double d = scale * Math.min(1.0, Math.sqrt(size[cell] / (double)maxSize));
+					final double x = (cell / height) * scale + (scale - d) / 2;
+					final double y = (cell % height) * scale + (scale - d) / 2;
+					g.setColor(Group.color(offer[cell], offerArray));
+					g.fillOval((int)Math.round(x), (int)Math.round(y), Math.max(1, (int)Math.round(d)), Math.max(1, (int)Math.round(d)));
+				}
+				g.dispose();
+				ImageIO.write(image, "png", new File(dir, String.format("frame_%09d.png", tick)));
+				frames++;
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		String in = GUI.argumentForKey("-in", args);
+		String out = GUI.argumentForKey("-out", args);
+		String scale = GUI.argumentForKey("-scale", args);
+		String maxSize = GUI.argumentForKey("-maxsize", args);
+		File dir = new File(out == null ? "frames" : out);
+		int n = render(in == null ? "grid.bin" : in, dir, scale == null ? 8 : Integer.parseInt(scale),
+				maxSize == null ? 40 : Integer.parseInt(maxSize));
+		System.out.println(n+" frames written to "+dir);
+	}
+}
@@ -9,15 +9,20 @@ package groupModel;
  * nDG.
  */
 import java.awt.Color;
+import java.util.Arrays;
 
 import sim.engine.SimState;
 import sim.engine.Steppable;
 import sim.engine.Stoppable;
 import sim.portrayal.simple.OvalPortrayal2D;
 import sim.util.Bag;
+import sim.util.IntBag;
 import sweep.GUIStateSweep;
 
 public class Group implements Steppable {
+	public static final int PAIRS = 0;//playMode: each round members play in random pairs (ug)
+	public static final int EXPECTED = 1;//playMode: each round members gain their expected payoffs against all other members (expectedPlay)
+	public static final int COALITIONS = 2;//playMode: each round members play the n-person game in coalitions of proposers + recipients (NPersonGame)
 	int x; //x location
 	int y; //y location
 	Bag members = null; //contains the members of the group
@@ -26,12 +31,26 @@ public class Group implements Steppable {
 	Bag proposers = new Bag();
 	Bag responders = new Bag();
 	Bag  accepters = new Bag();
+	int version = 0;//changes whenever members join or leave
+	Bag[] byOffer = null;//members by offer index, kept by assortative mating (Mating)
+	/* fast forward */
+	long jumpFrom = -1;//first tick of play skipped by the current jump, -1 if not jumping
+	long jumpEnd;//tick at which play is exact again
+	int jumpVersion;//version of the group when the jump started
+	Agent[] jumpMembers;//members during the jump
+	double[] gainMean;//mean resource gain of each member per tick of play
+	double[] gainVar;//variance of the resource gain per tick
+	int[] offerCounts;//number of members at each offer level, for expectedGains (and StrategyCountGroup.expectedPlay)
+	int[] acceptCounts;
+	double[] acceptedBy;//level sums of expectedGains
+	double[] givenTo;
+	double[] givenSqTo;
 
 	public double getShare() {
 		double share = 0;
 		for (int i=0;i<members.numObjs;i++) {
 			Agent a = (Agent)members.objs[i];
-			share += a.offer;
+			share += a.getOffer();
 		}
 		return share/(double)members.numObjs;
 	}
@@ -48,32 +67,144 @@ public class Group implements Steppable {
 			Agent a = (Agent)this.members.objs[i];
 			a.setGroup(this);
 		}
+		state.mates.reset(this);
 	}
 
-	public void setColor(){
-		double offer = 0;
-		for (int i=0;i<members.numObjs;i++) {
+	/*
+	 * Scans of the members used by the Experimenter, so that data are collected the same
+	 * way whether members are agents or strategy counts (StrategyCountGroup).
+	 */
+	public int size() {
+		return members.numObjs;
+	}
+
+	public double offerSum() {
+		double sum = 0;
+		for(int i=0;i<members.numObjs;i++)
+			sum += ((Agent)members.objs[i]).getOffer();
+		return sum;
+	}
+
+	public double acceptSum() {
+		double sum = 0;
+		for(int i=0;i<members.numObjs;i++)
+			sum += ((Agent)members.objs[i]).getAccept();
+		return sum;
+	}
+
+	/**
+	 * Sum of the offers made in the last round of play.
+	 * @return
+	 */
+	public double currentOfferSum() {
+		double sum = 0;
+		for(int i=0;i<members.numObjs;i++)
+			sum += ((Agent)members.objs[i]).currentOffer;
+		return sum;
+	}
+
+	/**
+	 * Adds the strategy of each member, offerIndex * levels + acceptIndex.
+	 * @param strategies
+	 * @param levels length of the offer array
+	 */
+	public void addStrategies(IntBag strategies, int levels) {
+		for(int i=0;i<members.numObjs;i++) {
+			Agent a = (Agent)members.objs[i];
+			strategies.add(a.offerIndex * levels + a.acceptIndex);
+		}
+	}
+
+	/**
+	 * Adds the number of members with each offer and accept index.
+	 * @param offerFrequency
+	 * @param acceptFrequency
+	 */
+	public void countStrategies(double[] offerFrequency, double[] acceptFrequency) {
+		for(int i=0;i<members.numObjs;i++) {
 			Agent a = (Agent)members.objs[i];
-			offer+= a.offer;
+			offerFrequency[a.offerIndex]++;
+			acceptFrequency[a.acceptIndex]++;
 		}
-		offer = offer/(double)members.numObjs;
-		double[] oA =state.offerArray;
+	}
+
+	/**
+	 * Number of members with an offer index.
+	 * @param offerIndex
+	 * @return
+	 */
+	public int countOffer(int offerIndex) {
+		int n = 0;
+		for(int i=0;i<members.numObjs;i++) {
+			if(((Agent)members.objs[i]).offerIndex == offerIndex)
+				n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Adds the number of members at each level of their current offer (the last offer
+	 * made) and of their accept.
+	 * @param offerCounts
+	 * @param acceptCounts
+	 */
+	public void countCurrentOffers(double[] offerCounts, double[] acceptCounts) {
+		for(int i=0;i<members.numObjs;i++) {
+			Agent a = (Agent)members.objs[i];
+			offerCounts[state.offerIndex(a.currentOffer)]++;
+			acceptCounts[a.acceptIndex]++;
+		}
+	}
+
+	public void addMember(Agent a) {
+		members.add(a);
+		version++;
+		state.mates.joined(this, a);
+	}
+
+	public void removeMember(Agent a) {
+		members.remove(a);
+		version++;
+		state.mates.left(this, a);
+	}
+
+	/**
+	 * Replaces the members, as when the group fissions.
+	 * @param members
+	 */
+	public void setMembers(Bag members) {
+		this.members = members;
+		version++;
+		state.mates.reset(this);
+	}
+
+	public void setColor(){
+		double offer = offerSum()/(double)size();
+		OvalPortrayal2D o = new OvalPortrayal2D(color(offer, state.offerArray));
+		GUIStateSweep guiState = (GUIStateSweep)state.gui;
+		guiState.agentsPortrayalSparseGrid.setPortrayalForObject(this, o);
+
+	}	
+
+
+	/**
+	 * Color of a group with a mean offer, also used by GridRenderer.
+	 * @param offer
+	 * @param oA offer array
+	 * @return
+	 */
+	public static Color color(double offer, double[] oA) {
 		Color[] colors = {Color.RED/*0.0*/,Color.ORANGE/*0.1*/,Color.YELLOW/*0.2*/,Color.MAGENTA/*0.3*/,Color.GREEN/*0.4*/,Color.BLUE/*0.5*/,
 				Color.CYAN/*0.6*/,Color.BLACK/*0.6<>1*/,Color.BLACK/*0.6<>1*/,Color.BLACK/*0.6<>1*/,Color.BLACK/*0.6<>1*/};
 		Color c = Color.BLACK;
-		for(int i=0;i<colors.length;i++) {
+		for(int i=0;i<colors.length && i<oA.length;i++) {
 			if(offer <= oA[i]) {
 				c = colors[i];
 				break;
 			}
 		}
-		OvalPortrayal2D o = new OvalPortrayal2D(c);
-		GUIStateSweep guiState = (GUIStateSweep)state.gui;
-		guiState.agentsPortrayalSparseGrid.setPortrayalForObject(this, o);
-
-	}	
-
-	
+		return c;
+	}
 
 	/**
 	 * This method implements the UG at the group level. The proposers and responders
@@ -88,6 +219,20 @@ public class Group implements Steppable {
 			System.out.println("Singleton");
 			return; //we are done
 		}
+		if(state.playMode == EXPECTED) {
+			expectedPlay();
+			return;
+		}
+		if(state.playMode == COALITIONS) {
+			state.coalitions.ug(this);
+			wake();
+			return;
+		}
+		if(state.ugKernel) {
+			state.kernel.ug(this);
+			wake();
+			return;
+		}
 		proposers.clear();//bags used for dictators and recipients.  Created at
 		responders.clear();//construction time and cleared for each round of play.
 		Bag players = new Bag(members);
@@ -119,28 +264,29 @@ public class Group implements Steppable {
 		}
 
 
+		final double[] keep = state.keepFraction;
+		final double[] give = state.giveFraction;
 		for (int i=0; i<proposers.numObjs;i++) {//start with the first proposer and work through the array
 			Agent p = (Agent)proposers.objs[i];//cast as a proposer agent
 			Agent r = null;
-			double offer = 0.0;
 			if(i < responders.numObjs) {//if there are no more recipients go to else
 				r = (Agent)responders.objs[i];
 			}
 			else {//play a half game, get a random recipient
 				r = (Agent)responders.objs[state.random.nextInt(responders.numObjs)];
-				if(p.offer >= r.accept) {
-					p.getResourceTN(state);
-					offer = p.offer(state) * p.endowment;
-					p.resources += (p.endowment - offer) ; //we are done
+				if(p.offerIndex >= r.acceptIndex) {//the lattice is increasing, so an offer meets the accepts of lower or equal index
+					final double endowment = p.getResourceTN(state);
+					p.currentOffer = p.getOffer();
+					p.addResources(keep[p.offerIndex] * endowment); //we are done
 				}
 				break;//we can break the loop at this point
 			}
 
-			if(p.offer >= r.accept) {//now play
-				p.getResourceTN(state);
-				offer = p.offer(state) * p.endowment;
-				p.resources+=(p.endowment- offer);//the amount of the resource endowment the dictator keeps
-				r.resources+= offer;//give it the offer
+			if(p.offerIndex >= r.acceptIndex) {//now play
+				final double endowment = p.getResourceTN(state);
+				p.currentOffer = p.getOffer();
+				p.addResources(keep[p.offerIndex] * endowment);//the amount of the resource endowment the dictator keeps
+				r.addResources(give[p.offerIndex] * endowment);//give it the offer
 			}
 			else {
 				//nothing for both
@@ -150,17 +296,199 @@ public class Group implements Steppable {
 		if(proposers.numObjs < responders.numObjs) {//for cases with more recipients
 			Agent p = (Agent)proposers.objs[state.random.nextInt(proposers.numObjs)]; //get a random proposer
 			Agent r = (Agent)responders.objs[responders.numObjs-1]; //get the odd responder, the last one
-			if(p.offer >= r.accept) {
-				p.getResourceTN(state); //getResource
-				r.resources+= p.endowment*p.offer;
+			if(p.offerIndex >= r.acceptIndex) {
+				final double endowment = p.getResourceTN(state); //getResource
+				r.addResources(give[p.offerIndex] * endowment);
 
 			}
 		}
 
 		proposers.clear();//clear the bags just in case an agent dies, it won't
 		responders.clear();//hang around for a while
+		wake();
+	}
+
+	/**
+	 * Event driven mode: wakes members that can reproduce after a round of play.
+	 */
+	void wake() {
+		if(state.eventDriven) {
+			final long tick = (long)state.schedule.getTime();
+			for(int i=0;i<members.numObjs;i++)
+				((Agent)members.objs[i]).resourcesChanged(tick);
+		}
+	}
+
+
+	/**
+	 * Fast forward mode: if the members of the group have no life history events for at
+	 * least fastForwardMinTicks ticks, play is skipped until the tick before the first
+	 * event.  The resources each member gains over the skipped ticks are added by settle.
+	 * The jump also ends before a member could reach io and reproduce, and when another
+	 * agent joins the group.  The gains are those of pair play (expectedGains), so groups
+	 * playing coalitions (playMode COALITIONS) do not fast forward.
+	 * @param state
+	 * @return true if the group is fast forwarding
+	 */
+	public boolean fastForward(Environment state) {
+		final int n = members.numObjs;
+		if(n < 2)
+			return false;
+		final long tick = (long)state.schedule.getTime();
+		long end = Long.MAX_VALUE;
+		for(int i=0;i<n;i++)
+			end = Math.min(end, ((Agent)members.objs[i]).eventTick - 1);
+		if(end - tick < state.fastForwardMinTicks)
+			return false;
+		expectedGains(state);
+		for(int i=0;i<n;i++) {
+			Agent a = (Agent)members.objs[i];
+			final double resources = a.getResources();
+			if(resources < a.io && gainMean[i] > 0) {//earliest tick it could reproduce
+				long reach = tick + (long)Math.ceil((a.io - resources) / gainMean[i]);
+				end = Math.min(end, Math.max(reach, a.readyTick()));
+			}
+		}
+		if(end - tick < state.fastForwardMinTicks)
+			return false;
+		jumpMembers = new Agent[n];
+		for(int i=0;i<n;i++)
+			jumpMembers[i] = (Agent)members.objs[i];
+		jumpFrom = tick;
+		jumpEnd = end;
+		jumpVersion = version;
+		return true;
+	}
+
+	/**
+	 * Expected payoff mode (playMode EXPECTED): in place of a round of random pairs, each
+	 * member gains the resources it expects from one, playing every other member as
+	 * proposer and as responder (expectedGains), so resources accumulate without the noise
+	 * of pairing and endowments.
+	 */
+	void expectedPlay() {
+		expectedGains(state);
+		for(int i=0;i<members.numObjs;i++) {
+			Agent a = (Agent)members.objs[i];
+			a.addResources(gainMean[i]);
+			a.currentOffer = a.getOffer();//every member proposes
+		}
+		wake();
 	}
 
+	/**
+	 * Sums over the members of a group for expected payoffs, from the number of members
+	 * with each offer index (offers) and each accept index (accepts): the number of members
+	 * whose accept each offer index meets (accepted), and the sums of the fractions given
+	 * (given) and of their squares (givenSq) by the members whose offers each accept index
+	 * takes.  The offer array is increasing, so offer o meets the accepts up to o and accept
+	 * a takes the offers from a on: prefix and suffix sums over the offer levels.
+	 * @param state
+	 * @param offers
+	 * @param accepts
+	 * @param accepted
+	 * @param given
+	 * @param givenSq
+	 */
+	static void levelSums(Environment state, int[] offers, int[] accepts, double[] accepted, double[] given, double[] givenSq) {
+		final int levels = offers.length;
+		final double[] give = state.giveFraction;
+		double sum = 0;
+		for(int o=0;o<levels;o++) {
+			sum += accepts[o];
+			accepted[o] = sum;
+		}
+		double g = 0, g2 = 0;
+		for(int a=levels-1;a>=0;a--) {
+			g += offers[a] * give[a];
+			g2 += offers[a] * give[a] * give[a];
+			given[a] = g;
+			givenSq[a] = g2;
+		}
+	}
+
+	/**
+	 * Clears the level counts of the members, making the level buffers for a lattice of
+	 * levels offers if needed.
+	 * @param levels
+	 */
+	void clearLevels(int levels) {
+		if(offerCounts == null || offerCounts.length != levels) {
+			offerCounts = new int[levels];
+			acceptCounts = new int[levels];
+			acceptedBy = new double[levels];
+			givenTo = new double[levels];
+			givenSqTo = new double[levels];
+		}
+		Arrays.fill(offerCounts, 0);
+		Arrays.fill(acceptCounts, 0);
+	}
+
+	/**
+	 * Mean and variance of the resources each member gains in one round of ug.  A member is
+	 * the proposer half the time and the responder half the time, and in either role plays
+	 * a partner drawn at random from the other members; this holds for odd sized groups
+	 * too.  With endowment E, a proposer with offer o gains E(1 - o) if o is at least the
+	 * partner's accept, and a responder with accept a gains E o' if the partner's offer o'
+	 * is at least a.  Members are counted by offer and accept (levelSums), so this takes
+	 * time linear in the size of the group.
+	 * @param state
+	 */
+	void expectedGains(Environment state) {
+		final int n = members.numObjs;
+		final double e1 = state.tnormal.mean();
+		final double e2 = state.tnormal.secondMoment();
+		final int levels = state.offerArray.length;
+		final double[] give = state.giveFraction;
+		clearLevels(levels);
+		final int[] offers = offerCounts;
+		final int[] accepts = acceptCounts;
+		for(int i=0;i<n;i++) {
+			Agent a = (Agent)members.objs[i];
+			offers[a.offerIndex]++;
+			accepts[a.acceptIndex]++;
+		}
+		levelSums(state, offers, accepts, acceptedBy, givenTo, givenSqTo);
+		if(gainMean == null || gainMean.length < n) {
+			gainMean = new double[n];
+			gainVar = new double[n];
+		}
+		for(int i=0;i<n;i++) {
+			Agent a = (Agent)members.objs[i];
+			final boolean self = a.offerIndex >= a.acceptIndex;//a is not its own partner
+			final double accepted = acceptedBy[a.offerIndex] - (self ? 1 : 0);
+			final double given = givenTo[a.acceptIndex] - (self ? give[a.offerIndex] : 0);
+			final double givenSq = givenSqTo[a.acceptIndex] - (self ? give[a.offerIndex] * give[a.offerIndex] : 0);
+			final double keep = state.keepFraction[a.offerIndex];
+			final double mean = 0.5 * e1 * (keep * accepted + given) / (n - 1);
+			final double square = 0.5 * e2 * (keep * keep * accepted + givenSq) / (n - 1);
+			gainMean[i] = mean;
+			gainVar[i] = Math.max(0.0, square - mean * mean);
+		}
+	}
+
+	/**
+	 * Ends a jump: each member of the jump gains resources for the rounds of play from
+	 * jumpFrom to tick - 1, drawn from the normal approximation of the sum of its gains.
+	 * In expected payoff mode a round's gain has no noise, so the gain is exactly rounds
+	 * times the expected gain.  Members that can now reproduce are woken, as after a
+	 * round of play.
+	 * @param tick
+	 */
+	public void settle(long tick) {
+		final long rounds = tick - jumpFrom;
+		final boolean exact = state.playMode == EXPECTED;
+		for(int i=0;i<jumpMembers.length;i++) {
+			double gain = rounds * gainMean[i];
+			if(!exact)
+				gain += Math.sqrt(rounds * gainVar[i]) * state.random.nextGaussian();
+			if(jumpMembers[i].isAlive())//a member that died may have passed its slot on
+				jumpMembers[i].addResources(Math.max(0.0, gain));
+		}
+		jumpFrom = -1;
+		jumpMembers = null;
+		wake();//members that now have io are scheduled, which also bounds the next jump
+	}
 
 	/**
 	 * Handles the end of a group, when it has no members.
@@ -186,13 +514,22 @@ public class Group implements Steppable {
 
 	/**
 	 * Step method for groups.  First check to see if it is empty.  Second,
-	 * if not empty, play the nDG.
+	 * if not empty, play the nDG.  In fast forward mode, play is skipped while the
+	 * group is fast forwarding.
 	 */
 	public void step(SimState state) {
 		Environment eState = (Environment)state;
+		if(jumpFrom >= 0) {
+			final long tick = (long)state.schedule.getTime();
+			if(tick < jumpEnd && version == jumpVersion)
+				return;//fast forwarding
+			settle(tick);
+		}
 		if(die(eState))
 			return;//if no members
 		groupDisperse(eState);//if too few
+		if(eState.fastForward && eState.eventDriven && eState.playMode != COALITIONS && fastForward(eState))//jumps credit the gains of pair play
+			return;
 		ug();
 	}
 }
@@ -0,0 +1,102 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.util.ArrayList;
+
+import sweep.SetParameters;
+
+/**
+ * Runs a single simulation without the MASON console or charts and returns the rows
+ * the Experimenter records at each sampling interval.  Each row starts with the step
+ * at which it was recorded, followed by the values written by Experimenter.nextInterval.
+ */
+public class HeadlessRun {
+
+	/**
+	 * Sets the parameters that exist in the Environment. Parameters in scripts that
+	 * the Environment does not have are skipped (see SweepCoordinator, which lists them).
+	 * @param state
+	 * @param parameters
+	 */
+	public static void setParameters(Environment state, ArrayList<ArrayList<Object>> parameters) {
+		ArrayList<ArrayList<Object>> known = new ArrayList<ArrayList<Object>>(parameters.size());
+		for(int i=0;i<parameters.size();i++) {
+			ArrayList<Object> row = parameters.get(i);
+			if(isParameter((String)row.get(2)))
+				known.add(row);
+		}
+		SetParameters.setFixeParameters(state, known);
+	}
+
+	/**
+	 * True if the Environment has a public field of the name.
+	 * @param name
+	 * @return
+	 */
+	public static boolean isParameter(String name) {
+		try {
+			Environment.class.getField(name);
+			return true;
+		} catch (NoSuchFieldException e) {
+			return false;//not a parameter of this model
+		}
+	}
+
+	/**
+	 * Creates an environment with its experimenter, ready to be started.
+	 * @param fixed fixed parameters of the sweep
+	 * @param cell parameters of the sweep cell
+	 * @param seed
+	 * @return
+	 */
+	public static Environment makeEnvironment(ArrayList<ArrayList<Object>> fixed, ArrayList<ArrayList<Object>> cell, long seed) {
+		Environment state = new Environment(seed);
+		setParameters(state, fixed);
+		setParameters(state, cell);
+		state.paramSweeps = true;//the experimenter only records data in sweeps
+		state.autoCalculationSimulationControl();
+		state.observer = makeExperimenter(state);
+		return state;
+	}
+
+	/**
+	 * Creates an experimenter that keeps its data rows instead of writing them to files.
+	 * @param state
+	 * @return
+	 */
+	public static Experimenter makeExperimenter(Environment state) {
+		Experimenter experimenter = new Experimenter("results.txt", "data", state, null, "%.6f", new String[0]);
+		experimenter.rows = new ArrayList<double[]>();
+		return experimenter;
+	}
+
+	/**
+	 * Steps a started environment until the end of the simulation.
+	 * @param state
+	 */
+	public static void runToEnd(Environment state) {
+		while(state.schedule.getSteps() < state.simLength) {
+			if(!state.schedule.step(state))
+				break;//nothing left on the schedule
+		}
+	}
+
+	/**
+	 * Runs a complete simulation and returns the data rows.
+	 * @param fixed
+	 * @param cell
+	 * @param seed
+	 * @return
+	 */
+	public static ArrayList<double[]> run(ArrayList<ArrayList<Object>> fixed, ArrayList<ArrayList<Object>> cell, long seed) {
+		Environment state = makeEnvironment(fixed, cell, seed);
+		state.start();
+		runToEnd(state);
+		state.finish();
+		return state.experimenter.rows;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.util.ArrayList;
+
+/**
+ * Latin hypercube design with n cells. The range of each parameter is split into n strata
+ * and every stratum is used by exactly one cell. Instead of storing a permutation of the
+ * strata for every parameter, the stratum of a cell is computed with a keyed Feistel
+ * permutation of the cell index (cycle walking keeps it within 0..n-1), so the design
+ * needs no memory proportional to n.
+ */
+public class LatinHypercubeDesign extends DesignSpace {
+	long n; //number of cells
+	long seed;
+	int halfBits; //bits in each half of the Feistel network
+	long halfMask;
+
+	public LatinHypercubeDesign(ArrayList<ArrayList<Object>> swept, long n, long seed) {
+		super(swept);
+		if(n < 1)
+			throw new IllegalArgumentException("A Latin hypercube needs at least one cell.");
+		this.n = n;
+		this.seed = seed;
+		int bits = 64 - Long.numberOfLeadingZeros(Math.max(1, n - 1));
+		halfBits = (bits + 1) / 2;
+		halfMask = (1L << halfBits) - 1;
+	}
+
+	public long size() {
+		return n;
+	}
+
+	/**
+	 * Mixes a key into a 64 bit hash (splitmix64 finalizer).
+	 * @param z
+	 * @return
+	 */
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Permutation of 0..n-1 for a parameter.
+	 * @param i
+	 * @param dimension
+	 * @return
+	 */
+	long permute(long i, int dimension) {
+		long key = mix(seed + 0x9E3779B97F4A7C15L * (dimension + 1));
+		do {
+			long left = i >>> halfBits;
+			long right = i & halfMask;
+			for(int round=0;round<4;round++) {
+				long f = mix(key + round * 0x632BE59BD9B4E019L + right) & halfMask;
+				long t = right;
+				right = left ^ f;
+				left = t;
+			}
+			i = (left << halfBits) | right;
+		} while(i >= n);//cycle walking
+		return i;
+	}
+
+	public Object value(long cell, int dimension) {
+		long stratum = permute(cell, dimension);
+		double jitter = (mix(seed ^ mix(cell * 31 + dimension)) >>> 11) * 0x1.0p-53;//position within the stratum
+		return fromUnit(dimension, (stratum + jitter) / n);
+	}
+}
@@ -0,0 +1,151 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Histogram over the offer lattice, indexed directly by offer or accept index, for the
+ * offer, accept, fitness and rejection data of the Experimenter.  It keeps the bin and
+ * binN arrays and the statistics of observer.Bin (with the same arithmetic, so output is
+ * unchanged), but recording is an array update whatever the size of the lattice, and the
+ * distributions can be coarsened for output: with outputBins > 0 and fewer than the levels
+ * of the lattice, level i goes to output bin i * outputBins / levels, so bins are runs of
+ * adjacent levels and a row has outputBins columns per distribution however fine the
+ * lattice is.  The arrays of the distributions are reused between intervals.
+ */
+public class LatticeHistogram implements Serializable {
+	private static final long serialVersionUID = 1L;
+	public final double[] values; //offer of each level
+	public final double[] bin; //sum recorded at each level
+	public final double[] binN; //number of records at each level
+	final double[] dis; //distribution at each level
+	double[] coarse = new double[0]; //coarsened distribution
+	double[] coarseN = new double[0];
+
+	public LatticeHistogram(double[] values) {
+		super();
+		this.values = values;
+		bin = new double[values.length];
+		binN = new double[values.length];
+		dis = new double[values.length];
+	}
+
+	/**
+	 * Records x at level i.
+	 * @param i
+	 * @param x
+	 */
+	public void add(int i, double x) {
+		bin[i] += x;
+		binN[i]++;
+	}
+
+	/**
+	 * Records k records with sum x at level i.
+	 * @param i
+	 * @param x
+	 * @param k
+	 */
+	public void add(int i, double x, int k) {
+		bin[i] += x;
+		binN[i] += k;
+	}
+
+	/**
+	 * Mean of the values of the levels weighted by bin, over the number of records.
+	 * @return
+	 */
+	public double getMean() {
+		double sum = 0, n = 0;
+		for(int i=0;i<values.length;i++) {
+			sum += values[i] * bin[i];
+			n += binN[i];
+		}
+		return n > 0 ? sum / n : 0;
+	}
+
+	/**
+	 * Standard deviation of the values of the levels weighted by bin.
+	 * @return
+	 */
+	public double getSD() {
+		final double mean = getMean();
+		double ss = 0, n = 0;
+		for(int i=0;i<values.length;i++) {
+			final double d = values[i] - mean;
+			ss += d * d * bin[i];
+		}
+		for(int i=0;i<values.length;i++)
+			n += bin[i];
+		return n > 0 ? Math.sqrt(ss / n) : 0;
+	}
+
+	/**
+	 * The frequency of each level, bin over the number of records, in output bins.
+	 * @param outputBins
+	 * @return a reused array
+	 */
+	public double[] frequencies(int outputBins) {
+		double n = 0;
+		for(int i=0;i<values.length;i++)
+			n += binN[i];
+		for(int i=0;i<values.length;i++)
+			dis[i] = n > 0 ? bin[i] / n : 0;
+		return coarsen(dis, outputBins);
+	}
+
+	/**
+	 * The rate of each level, bin over binN (0 for levels with no records), in output bins,
+	 * where the rate of a bin is the sum of its bins over the sum of its binNs.
+	 * @param outputBins
+	 * @return a reused array
+	 */
+	public double[] rates(int outputBins) {
+		if(!coarsened(outputBins)) {
+			for(int i=0;i<values.length;i++)
+				dis[i] = binN[i] > 0 ? bin[i] / binN[i] : 0;
+			return dis;
+		}
+		if(coarseN.length != outputBins)
+			coarseN = new double[outputBins];
+		final double[] c = coarsen(bin, outputBins);
+		Arrays.fill(coarseN, 0);
+		for(int i=0;i<values.length;i++)
+			coarseN[(int)((long)i * outputBins / values.length)] += binN[i];
+		for(int j=0;j<outputBins;j++)
+			c[j] = coarseN[j] > 0 ? c[j] / coarseN[j] : 0;
+		return c;
+	}
+
+	/**
+	 * True if outputBins coarsens the lattice.
+	 * @param outputBins
+	 * @return
+	 */
+	boolean coarsened(int outputBins) {
+		return outputBins > 0 && outputBins < values.length;
+	}
+
+	/**
+	 * Sums x, one element per level, into output bins, or returns x when outputBins does not
+	 * coarsen the lattice.
+	 * @param x
+	 * @param outputBins
+	 * @return a reused array, or x
+	 */
+	public double[] coarsen(double[] x, int outputBins) {
+		if(!coarsened(outputBins))
+			return x;
+		if(coarse.length != outputBins)
+			coarse = new double[outputBins];
+		Arrays.fill(coarse, 0);
+		for(int i=0;i<x.length;i++)
+			coarse[(int)((long)i * outputBins / x.length)] += x[i];
+		return coarse;
+	}
+}
@@ -0,0 +1,180 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A node of the genealogy of the living agents.  Each agent has a node, which refers to the
+ * node of its nearest ancestor that is still needed.  A node is needed while its agent
+ * lives or while it is the ancestor of more than one needed node; its reference count is
+ * the number of those (its agent and the nodes that refer to it).  When the count falls to
+ * 0 the node lets go of its ancestor, so extinct lineages are collected by the garbage
+ * collector.  Dead nodes with a single descendant are spliced out of the genealogy when
+ * it is walked and when an agent reproduces (path compression), so the nodes kept do not
+ * grow with the number of generations, sampled or not.
+ * Each node also keeps the id of the agent in which its offer arose by mutation (or of
+ * the initial agent), which identifies the lineage of the offer.
+ */
+public class Lineage implements Serializable {
+	private static final long serialVersionUID = 1L;
+	Lineage parent; //nearest needed ancestor, null for initial agents
+	final long birth; //tick of birth
+	final long origin; //id of the agent in which the offer arose
+	int refs = 1; //the living agent and the nodes that refer to this one
+	boolean alive = true;
+	int stamp = 0; //sample in which the node was last walked
+	int meet; //position on the first path of the sample where the walk from this node meets it
+
+	/**
+	 * Node of a new agent.
+	 * @param parent node of the parent, null for initial agents
+	 * @param birth
+	 * @param origin
+	 */
+	public Lineage(Lineage parent, long birth, long origin) {
+		super();
+		this.parent = parent;
+		this.birth = birth;
+		this.origin = origin;
+		if(parent != null)
+			parent.refs++;
+	}
+
+	/**
+	 * Node of a child of the agent with this node.  The offer lineage continues if the
+	 * child has the parent's offer, otherwise it starts with the child.
+	 * @param birth
+	 * @param sameOffer
+	 * @param id id of the child
+	 * @return
+	 */
+	public Lineage child(long birth, boolean sameOffer, long id) {
+		ancestor();//the chain of dead ancestors since the last birth is spliced out
+		return new Lineage(this, birth, sameOffer ? origin : id);
+	}
+
+	/**
+	 * The agent of this node died.
+	 */
+	public void die() {
+		alive = false;
+		release(this);
+	}
+
+	/**
+	 * Removes a reference to a node, and to its ancestors that are no longer needed.
+	 * @param n
+	 */
+	static void release(Lineage n) {
+		while(n != null && --n.refs == 0) {
+			Lineage p = n.parent;
+			n.parent = null;
+			n = p;
+		}
+	}
+
+	/**
+	 * The nearest ancestor that is alive or a branch point.  Dead ancestors with a single
+	 * descendant are spliced out of the genealogy.
+	 * @return
+	 */
+	Lineage ancestor() {
+		Lineage p = parent;
+		while(p != null && !p.alive && p.refs == 1) {
+			Lineage q = p.parent;
+			p.parent = null;//its only reference was the one now made to q
+			p.refs = 0;
+			p = q;
+		}
+		parent = p;
+		return p;
+	}
+
+	/**
+	 * Birth tick of the most recent common ancestor of the living agents with these nodes.
+	 * @param nodes
+	 * @param n number of nodes
+	 * @param stamp new for each sample
+	 * @return the birth tick, or -1 if the nodes descend from different initial agents
+	 */
+	static long mrcaBirth(Lineage[] nodes, int n, int stamp) {
+		if(n == 0)
+			return -1;
+		ArrayList<Lineage> path = new ArrayList<Lineage>();//ancestors of the first node
+		for(Lineage a = nodes[0]; a != null; a = a.ancestor()) {
+			a.stamp = stamp;
+			a.meet = path.size();
+			path.add(a);
+		}
+		int oldest = 0;//position on the path of the common ancestor so far, -1 if there is none
+		ArrayList<Lineage> walk = new ArrayList<Lineage>();
+		for(int i=1;i<n;i++) {
+			walk.clear();
+			Lineage a = nodes[i];
+			while(a != null && a.stamp != stamp) {
+				walk.add(a);
+				a = a.ancestor();
+			}
+			final int meet = a == null ? -1 : a.meet;
+			for(int j=0;j<walk.size();j++) {
+				walk.get(j).stamp = stamp;
+				walk.get(j).meet = meet;
+			}
+			if(meet < 0 || oldest < 0)
+				oldest = -1;//no common ancestor, the walks go on to compress the genealogy
+			else
+				oldest = Math.max(oldest, meet);
+		}
+		return oldest < 0 ? -1 : path.get(oldest).birth;
+	}
+
+	/**
+	 * Number of initial agents with living descendants.  The genealogy of the descendants
+	 * of an initial agent has one root, its node or its oldest node still needed, so this
+	 * counts the roots reached by walking up from the nodes.
+	 * @param nodes
+	 * @param n number of nodes
+	 * @param stamp new for each sample
+	 * @return
+	 */
+	static int countFounders(Lineage[] nodes, int n, int stamp) {
+		int founders = 0;
+		for(int i=0;i<n;i++) {
+			Lineage a = nodes[i];
+			while(a != null && a.stamp != stamp) {
+				a.stamp = stamp;
+				a = a.ancestor();
+			}
+			if(a == null)//a root not reached before
+				founders++;
+		}
+		return founders;
+	}
+
+	/**
+	 * Counts the offer lineages of each offer level: the number of different origins among
+	 * the agents with the offer.
+	 * @param nodes
+	 * @param offerIndex offer index of the agent of each node
+	 * @param n number of nodes
+	 * @param counts lineages of each offer index, set by this method
+	 */
+	static void countOrigins(Lineage[] nodes, int[] offerIndex, int n, double[] counts) {
+		final int levels = counts.length;
+		long[] keys = new long[n];
+		for(int i=0;i<n;i++)
+			keys[i] = nodes[i].origin * levels + offerIndex[i];
+		Arrays.sort(keys);
+		Arrays.fill(counts, 0);
+		for(int i=0;i<n;i++) {
+			if(i == 0 || keys[i] != keys[i - 1])
+				counts[(int)(keys[i] % levels)]++;
+		}
+	}
+}
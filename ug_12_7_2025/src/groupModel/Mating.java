@@ -0,0 +1,282 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.io.Serializable;
+
+import ec.util.MersenneTwisterFast;
+import sim.util.Bag;
+
+/**
+ * Choice of mates for sexual reproduction (sex), set by the parameter mating.  Every rule
+ * takes constant time per birth (for a given offer array):
+ * RANDOM, a member of the group other than the agent, drawn uniformly;
+ * ASSORTATIVE, a member with the offer nearest the agent's, drawn uniformly among those with
+ * that offer (ties between a lower and a higher offer go by the number of members), from
+ * buckets of the members by offer that the group keeps up to date as members join and leave;
+ * SELF, the agent itself, drawn the way earlier versions did (until the draw is the agent),
+ * so their runs can be repeated.
+ * In strategy count mode (StrategyCountGroup) the rules choose the strategy of the mate.
+ */
+public abstract class Mating implements Serializable {
+	private static final long serialVersionUID = 1L;
+	public static final int RANDOM = 0;
+	public static final int ASSORTATIVE = 1;
+	public static final int SELF = 2;
+
+	/**
+	 * The rule for the parameter mating.
+	 * @param rule
+	 * @return
+	 */
+	public static Mating create(int rule) {
+		switch(rule) {
+		case RANDOM: return new Random();
+		case ASSORTATIVE: return new Assortative();
+		case SELF: return new Self();
+		default: throw new IllegalArgumentException("Unknown mating rule: "+rule);
+		}
+	}
+
+	/**
+	 * The mate of a, from its group, which has at least two members.
+	 * @param random
+	 * @param a
+	 * @return
+	 */
+	public abstract Agent mate(MersenneTwisterFast random, Agent a);
+
+	/**
+	 * The strategy of the mate of a member with strategy s of a group with at least two
+	 * members.
+	 * @param random
+	 * @param g
+	 * @param s
+	 * @return
+	 */
+	public abstract int mateStrategy(MersenneTwisterFast random, StrategyCountGroup g, int s);
+
+	/*
+	 * Membership changes, for rules that keep their own view of the members.
+	 */
+	void joined(Group g, Agent a) {
+	}
+
+	void left(Group g, Agent a) {
+	}
+
+	void reset(Group g) {
+	}
+
+	/**
+	 * A uniform draw from the members of bag other than a, which is one of them.
+	 * @param random
+	 * @param bag
+	 * @param a
+	 * @return
+	 */
+	static Agent other(MersenneTwisterFast random, Bag bag, Agent a) {
+		final int n = bag.numObjs;
+		Agent mate = (Agent)bag.objs[random.nextInt(n - 1)];
+		return mate == a ? (Agent)bag.objs[n - 1] : mate;//a's draw goes to the one left out
+	}
+
+	/**
+	 * The strategy of a member drawn uniformly from the members of g with an offer index in
+	 * [lo, hi], leaving out one member with strategy s.
+	 * @param random
+	 * @param g
+	 * @param s
+	 * @param lo
+	 * @param hi
+	 * @return
+	 */
+	static int otherStrategy(MersenneTwisterFast random, StrategyCountGroup g, int s, int lo, int hi) {
+		final int levels = g.levels;
+		final int[] count = g.count;
+		int n = 0;
+		for(int t=lo*levels;t<(hi+1)*levels;t++)
+			n += count[t];
+		if(s >= lo * levels && s < (hi + 1) * levels)
+			n--;
+		int k = random.nextInt(n);
+		for(int t=lo*levels;;t++) {
+			k -= t == s ? count[t] - 1 : count[t];
+			if(k < 0)
+				return t;
+		}
+	}
+
+	static class Random extends Mating {
+		private static final long serialVersionUID = 1L;
+
+		public Agent mate(MersenneTwisterFast random, Agent a) {
+			return other(random, a.group.members, a);
+		}
+
+		public int mateStrategy(MersenneTwisterFast random, StrategyCountGroup g, int s) {
+			return otherStrategy(random, g, s, 0, g.levels - 1);
+		}
+	}
+
+	static class Self extends Mating {
+		private static final long serialVersionUID = 1L;
+
+		public Agent mate(MersenneTwisterFast random, Agent a) {
+			Bag members = a.group.members;
+			Agent mate = (Agent)members.objs[random.nextInt(members.numObjs)];
+			while(!a.equals(mate)) {
+				mate = (Agent)members.objs[random.nextInt(members.numObjs)];
+			}
+			return mate;
+		}
+
+		public int mateStrategy(MersenneTwisterFast random, StrategyCountGroup g, int s) {
+			return s;
+		}
+	}
+
+	/**
+	 * Members of each group are kept in a bag for each offer index (Group.byOffer); each
+	 * agent knows its position in its bag (Agent.mateSlot), so leaving is a swap with the
+	 * last member of the bag.
+	 */
+	static class Assortative extends Mating {
+		private static final long serialVersionUID = 1L;
+
+		public Agent mate(MersenneTwisterFast random, Agent a) {
+			final Bag[] byOffer = a.group.byOffer;
+			final int o = a.offerIndex;
+			if(byOffer[o].numObjs > 1)
+				return other(random, byOffer[o], a);
+			for(int d=1;d<byOffer.length;d++) {
+				final int lo = o - d >= 0 ? byOffer[o - d].numObjs : 0;
+				final int hi = o + d < byOffer.length ? byOffer[o + d].numObjs : 0;
+				if(lo + hi == 0)
+					continue;
+				final int k = random.nextInt(lo + hi);
+				return (Agent)(k < lo ? byOffer[o - d].objs[k] : byOffer[o + d].objs[k - lo]);
+			}
+			return a;//no other member
+		}
+
+		public int mateStrategy(MersenneTwisterFast random, StrategyCountGroup g, int s) {
+			final int levels = g.levels;
+			final int o = s / levels;
+			for(int d=0;d<levels;d++) {
+				int members = 0;
+				for(int t=0;t<levels;t++) {
+					if(o - d >= 0)
+						members += g.count[(o - d) * levels + t];
+					if(d > 0 && o + d < levels)
+						members += g.count[(o + d) * levels + t];
+				}
+				if(d == 0)
+					members--;//the parent
+				if(members == 0)
+					continue;
+				if(d == 0)
+					return otherStrategy(random, g, s, o, o);
+				int k = random.nextInt(members);
+				for(int t=0;t<levels;t++) {
+					if(o - d >= 0 && (k -= g.count[(o - d) * levels + t]) < 0)
+						return (o - d) * levels + t;
+				}
+				for(int t=0;;t++) {
+					if((k -= g.count[(o + d) * levels + t]) < 0)
+						return (o + d) * levels + t;
+				}
+			}
+			return s;//no other member
+		}
+
+		void joined(Group g, Agent a) {
+			if(g.byOffer == null) {
+				reset(g);
+				return;
+			}
+			Bag b = g.byOffer[a.offerIndex];
+			a.mateSlot = b.numObjs;
+			b.add(a);
+		}
+
+		void left(Group g, Agent a) {
+			if(g.byOffer == null)
+				return;
+			Bag b = g.byOffer[a.offerIndex];
+			final int last = b.numObjs - 1;
+			Agent moved = (Agent)b.objs[last];
+			b.objs[a.mateSlot] = moved;
+			moved.mateSlot = a.mateSlot;
+			b.objs[last] = null;
+			b.numObjs = last;
+		}
+
+		void reset(Group g) {
+			final int levels = g.state.offerArray.length;
+			if(g.byOffer == null) {
+				g.byOffer = new Bag[levels];
+				for(int i=0;i<levels;i++)
+					g.byOffer[i] = new Bag();
+			}
+			for(int i=0;i<levels;i++)
+				g.byOffer[i].clear();
+			for(int i=0;i<g.members.numObjs;i++) {
+				Agent a = (Agent)g.members.objs[i];
+				a.mateSlot = g.byOffer[a.offerIndex].numObjs;
+				g.byOffer[a.offerIndex].add(a);
+			}
+		}
+	}
+
+	/**
+	 * Seeded comparison of the rules with the draw of earlier versions (SELF): the time per
+	 * mate drawn and the distribution of the mates of one member of a group of -size agents
+	 * with random strategies.  For RANDOM the mates should be uniform over the other members,
+	 * which is checked with a chi-square statistic (size - 2 degrees of freedom).
+	 * @param args -size -draws -seed
+	 */
+	public static void main(String[] args) {
+		String size = GUI.argumentForKey("-size", args);
+		String draws = GUI.argumentForKey("-draws", args);
+		String seed = GUI.argumentForKey("-seed", args);
+		final int n = size == null ? 40 : Integer.parseInt(size);
+		final int m = draws == null ? 1000000 : Integer.parseInt(draws);
+		Environment state = new Environment(seed == null ? 1 : Long.parseLong(seed));
+		state.paramSweeps = true;//no colors
+		state.calulateOfferList();
+		state.agents = new AgentStore(n);
+		Bag members = new Bag();
+		for(int i=0;i<n;i++) {
+			double offer = state.offerArray[state.random.nextInt(state.offerArray.length)];
+			double accept = state.offerArray[state.random.nextInt(state.offerArray.length)];
+			members.add(new Agent(state, offer, accept, true, 0.0, 0, 0));
+		}
+		String[] names = {"random", "assortative", "self"};
+		for(int rule=0;rule<names.length;rule++) {
+			state.mates = create(rule);
+			Group g = new Group(state, 0, 0, new Bag(members));
+			Agent a = (Agent)g.members.objs[0];
+			int[] counts = new int[n];
+			int sameOffer = 0;
+			long t = System.nanoTime();
+			for(int i=0;i<m;i++) {
+				Agent mate = state.mates.mate(state.random, a);
+				counts[(int)mate.id]++;//ids are 0 to n - 1, a is 0
+				if(mate.offerIndex == a.offerIndex)
+					sameOffer++;
+			}
+			t = System.nanoTime() - t;
+			double chi = 0;
+			for(int i=1;i<n;i++) {
+				final double e = m / (double)(n - 1);
+				chi += (counts[i] - e) * (counts[i] - e) / e;
+			}
+			System.out.printf("%-12s %8.1f ns per mate (with counting), self %.4f, same offer %.4f, chi-square over the others %.1f%n",
+					names[rule], t / (double)m, counts[0] / (double)m, sameOffer / (double)m, counts[0] == m ? Double.NaN : chi);
+		}
+	}
+}
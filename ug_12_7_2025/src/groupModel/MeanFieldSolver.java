@@ -0,0 +1,456 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sweep.LoadSimulation;
+
+/**
+ * Deterministic mean-field model of the simulation, for screening parameter cells before
+ * running them.  The population is one well mixed group, described by the frequency x of
+ * each strategy (offer index, accept index) of the lattice of calulateOfferList, starting
+ * uniform as the agents do.  Each round a member is proposer or responder with
+ * probability 1/2 and plays a random member, so with the mean endowment resourceEndowment
+ * of autoCalculateGame its expected resources per round (as in Group.expectedPlay) are
+ *   pi(o, a) = resourceEndowment / 2 * (keep(o) * P(accept | o) + sum over o' >= a of x(o') give(o')),
+ * and it reproduces every max(ibiTau, io / pi) rounds (io / pi without ibi).  Births are
+ * replicated with recombination (sex, by the mating rule) and with mutation of the offer and
+ * of the accept at mutationRate to a uniform level, and the population is held at a fixed
+ * size, as maxN holds it, so deaths replace the mean birth rate:
+ *   dx/dt = children(x) - x * mean birth rate.
+ * Its fixed points are those of the generation map x -> children(x) / mean birth rate,
+ * which solve iterates until no frequency is more than tolerance from the fixed point.  Group structure,
+ * dispersal and fission are left out: the solver is the well mixed baseline against which
+ * the groups act.
+ *
+ * row() gives the columns of Experimenter.nextInterval for the fixed point, with NaN for
+ * the columns of the groups (number of groups, dispersion and cluster sizes) and of the
+ * monitors, so mean-field and agent-based results can be compared column by column.  A
+ * cell of the default lattice takes about 600 generations and 1.2 ms, so one core solves
+ * about 800 cells per second, and thousands of cells per second need several cores.
+ * screen chooses the cells of a sweep to simulate from their fixed points.
+ */
+public class MeanFieldSolver {
+	public static final int CLUSTER_BINS = 25; //bins of the cluster distributions of the Experimenter
+	final Environment state;
+	final int levels;
+	final double[] x; //frequency of each strategy, offer index * levels + accept index
+	final double[] birth; //births of each strategy in the current step
+	final double[] child; //strategies of the children
+	final double[] offers; //marginal frequency of each offer
+	final double[] accepts; //marginal frequency of each accept
+	final double[] accepted; //probability that an offer is accepted
+	final double[] received; //expected share received by each accept as responder
+	final double[] birthOffer; //births by offer and by accept
+	final double[] birthAccept;
+	double tolerance = 1e-6; //largest distance of a frequency from the fixed point
+	double steadiness = 0.01; //change of the ratio of successive changes, relative to 1 - ratio, for extrapolation
+	long maxIterations = 100000;
+	long rounds = 0; //generations of the last solve
+	double change; //largest change of a frequency in the last iteration
+
+	/**
+	 * A solver for the parameters of state, whose game and simulation control have been
+	 * calculated (autoCalculationSimulationControl).
+	 * @param state
+	 */
+	public MeanFieldSolver(Environment state) {
+		super();
+		this.state = state;
+		state.calulateOfferList();
+		levels = state.offerArray.length;
+		x = new double[levels * levels];
+		birth = new double[levels * levels];
+		child = new double[levels * levels];
+		offers = new double[levels];
+		accepts = new double[levels];
+		accepted = new double[levels];
+		received = new double[levels];
+		birthOffer = new double[levels];
+		birthAccept = new double[levels];
+		Arrays.fill(x, 1.0 / x.length);
+	}
+
+	/**
+	 * Iterates the generation map to its fixed point.  Near the fixed point the change of
+	 * each generation shrinks by a steady ratio, that of the slowest mode of the dynamics
+	 * (such as the drift under mutation of accepts that no offer tests), and the map takes
+	 * thousands of generations to settle.  When the ratio has held for a few generations the
+	 * rest of the geometric series is added at once (Aitken extrapolation), which leaves the
+	 * next slowest mode, and so on.
+	 * @return generations iterated
+	 */
+	public long solve() {
+		final int size = x.length;
+		double lastChange = Double.NaN, lastRatio = Double.NaN;
+		int steady = 0;
+		for(rounds=0;rounds<maxIterations;rounds++) {
+			generation();
+			change = 0;
+			for(int s=0;s<size;s++)
+				change = Math.max(change, Math.abs(child[s] - x[s]));
+			final double ratio = change / lastChange;
+			steady = Math.abs(ratio - lastRatio) < steadiness * (1 - ratio) ? steady + 1 : 0;
+			lastChange = change;
+			lastRatio = ratio;
+			if(change < tolerance * (1 - Math.min(ratio, 0.999)))//so the distance to the fixed point is within tolerance
+				break;
+			if(steady < 3 || !(ratio < 1)) {
+				System.arraycopy(child, 0, x, 0, size);
+				continue;
+			}
+			final double jump = ratio / (1 - ratio);
+			double sum = 0;
+			for(int s=0;s<size;s++) {
+				x[s] = Math.max(0, child[s] + jump * (child[s] - x[s]));
+				sum += x[s];
+			}
+			for(int s=0;s<size;s++)
+				x[s] /= sum;
+			steady = 0;
+			lastChange = lastRatio = Double.NaN;
+		}
+		return rounds;
+	}
+
+	/**
+	 * One generation: the children of x, as frequencies, in child.
+	 */
+	void generation() {
+		final int n = levels;
+		marginals();
+		final double[] keep = state.keepFraction;
+		final double[] give = state.giveFraction;
+		double a = 0;
+		for(int o=0;o<n;o++) {//the lattice is increasing, so offer o meets the accepts a <= o
+			a += accepts[o];
+			accepted[o] = a;
+		}
+		double r = 0;
+		for(int o=n-1;o>=0;o--) {//and accept a is met by the offers o >= a
+			r += offers[o] * give[o];
+			received[o] = r;
+		}
+		final double scale = state.resourceEndowment / 2 / state.io;//births per round of pi / io
+		final double fastest = 1.0 / (state.ibi ? Math.max(1, state.ibiTau) : 1);//at most one birth per ibiTau rounds
+		double mean = 0;
+		for(int o=0;o<n;o++) {
+			final double proposer = keep[o] * accepted[o];
+			for(int k=0;k<n;k++) {
+				final double b = Math.min(fastest, scale * (proposer + received[k]));
+				birth[o * n + k] = x[o * n + k] * b;
+				mean += birth[o * n + k];
+			}
+		}
+		if(mean == 0) {//nobody reproduces
+			System.arraycopy(x, 0, child, 0, child.length);
+			return;
+		}
+		for(int s=0;s<birth.length;s++)
+			birth[s] /= mean;
+		children();
+	}
+
+	/**
+	 * Offer and accept marginals of x.
+	 */
+	void marginals() {
+		final int n = levels;
+		Arrays.fill(offers, 0);
+		Arrays.fill(accepts, 0);
+		for(int o=0;o<n;o++) {
+			for(int k=0;k<n;k++) {
+				offers[o] += x[o * n + k];
+				accepts[k] += x[o * n + k];
+			}
+		}
+	}
+
+	/**
+	 * Strategies of the children of the births, after recombination and mutation.
+	 */
+	void children() {
+		final int n = levels;
+		final double[] birth = this.birth, child = this.child;
+		if(!state.sex || state.mating == Mating.SELF)
+			System.arraycopy(birth, 0, child, 0, child.length);
+		else {
+			Arrays.fill(birthAccept, 0);
+			for(int o=0;o<n;o++) {
+				double sum = 0;
+				for(int k=0;k<n;k++) {
+					sum += birth[o * n + k];
+					birthAccept[k] += birth[o * n + k];
+				}
+				birthOffer[o] = sum;
+			}
+			final boolean assortative = state.mating == Mating.ASSORTATIVE;
+			for(int o=0;o<n;o++) {
+				if(assortative) {//the mate has the parent's offer
+					final double f = offers[o] > 0 ? 0.5 * birthOffer[o] / offers[o] : 0;
+					for(int k=0;k<n;k++)
+						child[o * n + k] = 0.5 * birth[o * n + k] + f * x[o * n + k];
+				}
+				else {//the parent's offer and a random member's accept, or the other way round
+					final double bo = 0.5 * birthOffer[o], xo = 0.5 * offers[o];
+					for(int k=0;k<n;k++)
+						child[o * n + k] = bo * accepts[k] + xo * birthAccept[k];
+				}
+			}
+		}
+		final double mu = state.mutationRate;
+		if(mu <= 0)
+			return;
+		final double keep = 1 - mu, spread = mu / n;
+		Arrays.fill(birthAccept, 0);//offers mutate to a uniform level
+		for(int o=0;o<n;o++)
+			for(int k=0;k<n;k++)
+				birthAccept[k] += child[o * n + k];
+		for(int o=0;o<n;o++) {
+			double sum = 0;
+			for(int k=0;k<n;k++) {
+				final double c = keep * child[o * n + k] + spread * birthAccept[k];
+				child[o * n + k] = c;
+				sum += c;
+			}
+			birthOffer[o] = sum;
+		}
+		for(int o=0;o<n;o++) {//and so do accepts
+			final double s = spread * birthOffer[o];
+			for(int k=0;k<n;k++)
+				child[o * n + k] = keep * child[o * n + k] + s;
+		}
+	}
+
+	/**
+	 * The data row of the fixed point, laid out as the rows of HeadlessRun: the generations
+	 * of solve in place of the step, then the columns of Experimenter.nextInterval.
+	 * @return
+	 */
+	public double[] row() {
+		marginals();
+		final int n = levels;
+		LatticeHistogram offer = new LatticeHistogram(state.offerArray);
+		LatticeHistogram accept = new LatticeHistogram(state.offerArray);
+		LatticeHistogram reject = new LatticeHistogram(state.offerArray);
+		double a = 0, rejected = 0;
+		for(int o=0;o<n;o++) {
+			offer.bin[o] = offer.binN[o] = offers[o];
+			accept.bin[o] = accept.binN[o] = accepts[o];
+			a += accepts[o];
+			reject.add(o, 1 - a);
+			rejected += offers[o] * (1 - a);
+		}
+		ArrayList<Double> row = new ArrayList<Double>();
+		row.add((double)rounds);
+		row.add(Double.NaN);//groups
+		row.add(offer.getMean());
+		row.add(offer.getSD());
+		row.add(offer.getMean());//at the time of the row
+		row.add(accept.getMean());
+		row.add(accept.getSD());
+		row.add(accept.getMean());
+		row.add(rejected);
+		add(row, offer.frequencies(state.outputBins));
+		add(row, reject.rates(state.outputBins));
+		add(row, accept.frequencies(state.outputBins));
+		row.add(Double.NaN);//dispersion
+		for(int i=0;i<2+3*CLUSTER_BINS;i++)
+			row.add(Double.NaN);//cluster sizes
+		if(state.convergenceMonitor)
+			row.add(Double.NaN);
+		if(state.adaptiveBurnIn) {
+			row.add(Double.NaN);
+			row.add(Double.NaN);
+		}
+		if(state.lineageTracking) {
+			row.add(Double.NaN);
+			row.add(Double.NaN);
+			final int bins = offer.coarsened(state.outputBins) ? state.outputBins : n;
+			for(int i=0;i<bins;i++)
+				row.add(Double.NaN);
+		}
+		double[] r = new double[row.size()];
+		for(int i=0;i<r.length;i++)
+			r[i] = row.get(i);
+		return r;
+	}
+
+	static void add(ArrayList<Double> row, double[] x) {
+		for(int i=0;i<x.length;i++)
+			row.add(x[i]);
+	}
+
+	/**
+	 * Mean offer and mean accept of the fixed point.
+	 * @return
+	 */
+	public double[] means() {
+		marginals();
+		double offer = 0, accept = 0;
+		for(int o=0;o<levels;o++) {
+			offer += offers[o] * state.offerArray[o];
+			accept += accepts[o] * state.offerArray[o];
+		}
+		return new double[]{offer, accept};
+	}
+
+	/**
+	 * Makes a solver for the parameters of a sweep cell and solves it.
+	 * @param fixed
+	 * @param cell
+	 * @return
+	 */
+	public static MeanFieldSolver solve(ArrayList<ArrayList<Object>> fixed, ArrayList<ArrayList<Object>> cell) {
+		Environment state = new Environment(0);
+		HeadlessRun.setParameters(state, fixed);
+		HeadlessRun.setParameters(state, cell);
+		state.autoCalculationSimulationControl();
+		MeanFieldSolver solver = new MeanFieldSolver(state);
+		solver.solve();
+		return solver;
+	}
+
+	/**
+	 * Solves count cells of a design from cell from on a number of threads.
+	 * @param fixed
+	 * @param design
+	 * @param from
+	 * @param count
+	 * @param threads
+	 * @param rows true for the rows of the cells, false for their means
+	 * @return
+	 */
+	static double[][] solve(ArrayList<ArrayList<Object>> fixed, DesignSpace design, long from, int count, int threads, boolean rows) {
+		double[][] results = new double[count][];
+		AtomicInteger next = new AtomicInteger();
+		Thread[] workers = new Thread[Math.max(1, threads)];
+		for(int i=0;i<workers.length;i++) {
+			workers[i] = new Thread(() -> {
+				for(int c=next.getAndIncrement();c<count;c=next.getAndIncrement()) {
+					MeanFieldSolver solver = solve(fixed, design.cell(from + c));
+					results[c] = rows ? solver.row() : solver.means();
+				}
+			});
+			workers[i].start();
+		}
+		try {
+			for(int i=0;i<workers.length;i++)
+				workers[i].join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return results;
+	}
+
+	/**
+	 * Chooses the cells of a sweep to simulate: of all the cells of the design, the k whose
+	 * mean-field fixed points (mean offer, mean accept) are farthest apart, picked one at a
+	 * time as the cell farthest from those already picked, starting from cell 0.  Cells
+	 * whose fixed points are alike are expected to behave alike, so the simulations cover
+	 * the regimes of the design rather than its grid.
+	 * @param fixed
+	 * @param design
+	 * @param k
+	 * @param threads
+	 * @return the cells, in increasing order
+	 */
+	public static long[] screen(ArrayList<ArrayList<Object>> fixed, DesignSpace design, int k, int threads) {
+		final int n = (int)Math.min(design.size(), Integer.MAX_VALUE);
+		if(k >= n) {
+			long[] all = new long[n];
+			for(int i=0;i<n;i++)
+				all[i] = i;
+			return all;
+		}
+		long t = System.nanoTime();
+		double[][] points = solve(fixed, design, 0, n, threads, false);
+		t = System.nanoTime() - t;
+		System.out.printf("Screened %d cells by their mean-field fixed points, %.0f cells per second%n", n, n / (t / 1e9));
+		double[] distance = new double[n];
+		Arrays.fill(distance, Double.POSITIVE_INFINITY);
+		long[] chosen = new long[k];
+		int next = 0;
+		for(int c=0;c<k;c++) {
+			chosen[c] = next;
+			distance[next] = -1;//taken
+			int farthest = -1;
+			for(int i=0;i<n;i++) {
+				if(distance[i] < 0)
+					continue;
+				final double dx = points[i][0] - points[next][0];
+				final double dy = points[i][1] - points[next][1];
+				distance[i] = Math.min(distance[i], dx * dx + dy * dy);
+				if(farthest < 0 || distance[i] > distance[farthest])
+					farthest = i;
+			}
+			next = farthest;
+		}
+		Arrays.sort(chosen);
+		return chosen;
+	}
+
+	/**
+	 * Solves every cell of the sweep of a script file and writes the cells with their rows
+	 * in the layout of SweepCoordinator results (one row per cell, rep 0, seed 0).
+	 * Usage: java groupModel.MeanFieldSolver -script script.txt -out meanfield.txt
+	 * [-design factorial|lhs|sobol] [-samples n] [-seed s] [-threads k] [-runfile runTimeFile.txt] [-precision 6]
+	 * @param args
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		String script = GUI.argumentForKey("-script", args);
+		String design = GUI.argumentForKey("-design", args);
+		String samples = GUI.argumentForKey("-samples", args);
+		String out = GUI.argumentForKey("-out", args);
+		String seed = GUI.argumentForKey("-seed", args);
+		String runFile = GUI.argumentForKey("-runfile", args);
+		String precision = GUI.argumentForKey("-precision", args);
+		String threads = GUI.argumentForKey("-threads", args);
+		final int k = threads == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads);
+		ArrayList<ArrayList<Object>> fixed = new ArrayList<ArrayList<Object>>();
+		ArrayList<ArrayList<Object>> table = LoadSimulation.convertValues(LoadSimulation.clean(
+				LoadSimulation.tokenize(fixed, script == null ? "script.txt" : script)));
+		DesignSpace d = DesignSpace.make(design, DesignSpace.split(table, fixed), samples == null ? 100 : Long.parseLong(samples),
+				seed == null ? 0 : Long.parseLong(seed));
+		final String format = "%."+(precision == null ? 6 : Integer.parseInt(precision))+"f";
+		String[] headers = runFile == null ? null : SweepCoordinator.columnHeaders(runFile);
+		try(PrintWriter w = new PrintWriter(new FileWriter(out == null ? "meanfield.txt" : out))) {
+			StringBuilder b = new StringBuilder("task\tcell\trep\tseed");
+			for(int i=0;i<d.dimensions();i++)
+				b.append('\t').append(d.name(i));
+			b.append("\tstep");
+			if(headers != null) {
+				for(int i=0;i<headers.length;i++)
+					b.append('\t').append(headers[i]);
+			}
+			w.println(b.toString());
+			long t = System.nanoTime();
+			final int block = 4096;//cells solved at a time
+			for(long first=0;first<d.size();first+=block) {
+				double[][] rows = solve(fixed, d, first, (int)Math.min(block, d.size() - first), k, true);
+				for(int r=0;r<rows.length;r++) {
+					final long c = first + r;
+					b = new StringBuilder(c+"\t"+c+"\t0\t0");
+					for(int i=0;i<d.dimensions();i++)
+						b.append('\t').append(d.value(c, i));
+					b.append('\t').append((long)rows[r][0]);
+					for(int j=1;j<rows[r].length;j++)
+						b.append('\t').append(String.format(format, rows[r][j]));
+					w.println(b.toString());
+				}
+			}
+			t = System.nanoTime() - t;
+			System.out.printf("%d cells solved, %.0f cells per second%n", d.size(), d.size() / (t / 1e9));
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import ec.util.MersenneTwisterFast;
+import sim.field.grid.SparseGrid2D;
+import sim.util.Bag;
+import sim.util.IntBag;
+import sim.util.MutableInt2D;
+
+/**
+ * Moore neighborhoods of the toroidal group grid, for finding groups and empty cells
+ * without allocating.  The cells within each radius are worked out once, as offsets in the
+ * order SparseGrid2D.getMooreLocations lists them, so results (and the random numbers
+ * drawn from them) are the same as with getMooreNeighbors.  When the neighborhood wraps
+ * onto itself (2 * radius + 1 larger than the grid), SparseGrid2D lists the cells in an
+ * order that depends on the center and is asked instead.  The results are scratch bags
+ * that are reused by the next call, so callers must be done with them first.  There is
+ * one MooreNeighborhood per Environment, so the scratch bags are never shared between
+ * threads.
+ */
+public class MooreNeighborhood implements Serializable {
+	private static final long serialVersionUID = 1L;
+	final SparseGrid2D space;
+	final int width;
+	final int height;
+	int[][][] dx = new int[2][0][]; //[includeOrigin][radius]: wrapped x offsets
+	int[][][] dy = new int[2][0][];
+	final MutableInt2D key = new MutableInt2D(); //looks up cells without making an Int2D
+	final Bag groups = new Bag(); //scratch results
+	final IntBag xPos = new IntBag();
+	final IntBag yPos = new IntBag();
+
+	public MooreNeighborhood(SparseGrid2D space) {
+		super();
+		this.space = space;
+		this.width = space.getWidth();
+		this.height = space.getHeight();
+	}
+
+	/**
+	 * The objects in a cell, null if there are none.  The bag belongs to the grid and must
+	 * not be changed.
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public Bag objectsAt(int x, int y) {
+		key.x = x;
+		key.y = y;
+		return space.getObjectsAtLocation(key);
+	}
+
+	/**
+	 * True if the offsets of radius can be used, false if the neighborhood wraps.
+	 * @param radius
+	 * @return
+	 */
+	boolean tabled(int radius) {
+		return 2 * radius < Math.min(width, height);
+	}
+
+	/**
+	 * Makes the offset tables up to radius.
+	 * @param radius
+	 * @param includeOrigin
+	 */
+	void table(int radius, boolean includeOrigin) {
+		final int o = includeOrigin ? 1 : 0;
+		if(radius < dx[o].length)
+			return;
+		int[][] x = Arrays.copyOf(dx[o], radius + 1);
+		int[][] y = Arrays.copyOf(dy[o], radius + 1);
+		IntBag xs = new IntBag();
+		IntBag ys = new IntBag();
+		for(int r=dx[o].length;r<=radius;r++) {
+			space.getMooreLocations(0, 0, r, SparseGrid2D.TOROIDAL, includeOrigin, xs, ys);
+			x[r] = Arrays.copyOf(xs.objs, xs.numObjs);
+			y[r] = Arrays.copyOf(ys.objs, ys.numObjs);
+		}
+		dx[o] = x;
+		dy[o] = y;
+	}
+
+	/**
+	 * The cells within radius of x, y, in xPos and yPos.
+	 * @param x
+	 * @param y
+	 * @param radius
+	 * @param includeOrigin
+	 * @return number of cells
+	 */
+	public int locations(int x, int y, int radius, boolean includeOrigin) {
+		xPos.clear();
+		yPos.clear();
+		if(!tabled(radius)) {
+			space.getMooreLocations(x, y, radius, SparseGrid2D.TOROIDAL, includeOrigin, xPos, yPos);
+			return xPos.numObjs;
+		}
+		table(radius, includeOrigin);
+		final int o = includeOrigin ? 1 : 0;
+		final int[] ox = dx[o][radius];
+		final int[] oy = dy[o][radius];
+		for(int i=0;i<ox.length;i++) {
+			int cx = x + ox[i];
+			if(cx >= width)
+				cx -= width;
+			int cy = y + oy[i];
+			if(cy >= height)
+				cy -= height;
+			xPos.add(cx);
+			yPos.add(cy);
+		}
+		return xPos.numObjs;
+	}
+
+	/**
+	 * The objects within radius of x, y, as listed by getMooreNeighbors.
+	 * @param x
+	 * @param y
+	 * @param radius
+	 * @param includeOrigin
+	 * @return a scratch bag
+	 */
+	public Bag neighbors(int x, int y, int radius, boolean includeOrigin) {
+		final int n = locations(x, y, radius, includeOrigin);
+		groups.clear();
+		for(int i=0;i<n;i++) {
+			Bag b = objectsAt(xPos.objs[i], yPos.objs[i]);
+			if(b != null)
+				groups.addAll(b);
+		}
+		return groups;
+	}
+
+	/**
+	 * Keeps only the empty cells of the last locations, as indices x * height + y in xPos.
+	 * @return a scratch bag
+	 */
+	public IntBag emptyCells() {
+		int k = 0;
+		for(int i=0;i<xPos.numObjs;i++) {
+			if(objectsAt(xPos.objs[i], yPos.objs[i]) == null)
+				xPos.objs[k++] = xPos.objs[i] * height + yPos.objs[i];
+		}
+		xPos.numObjs = k;
+		yPos.clear();
+		return xPos;
+	}
+
+	/**
+	 * Bytes allocated so far by the current thread, -1 if the JVM does not count them.
+	 * @return
+	 */
+	static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+
+	/**
+	 * Benchmark of the neighborhood searches of reproduction and fission against
+	 * SparseGrid2D: time and bytes allocated per call, on a grid with a group in a fraction
+	 * -density of the cells.
+	 * @param args -width -height -radius -density -calls
+	 */
+	public static void main(String[] args) {
+		String w = GUI.argumentForKey("-width", args);
+		String h = GUI.argumentForKey("-height", args);
+		String r = GUI.argumentForKey("-radius", args);
+		String d = GUI.argumentForKey("-density", args);
+		String c = GUI.argumentForKey("-calls", args);
+		final int width = w == null ? 100 : Integer.parseInt(w);
+		final int height = h == null ? 100 : Integer.parseInt(h);
+		final int radius = r == null ? 2 : Integer.parseInt(r);
+		final double density = d == null ? 0.3 : Double.parseDouble(d);
+		final int calls = c == null ? 2000000 : Integer.parseInt(c);
+		MersenneTwisterFast random = new MersenneTwisterFast(1);
+		SparseGrid2D space = new SparseGrid2D(width, height);
+		for(int x=0;x<width;x++)
+			for(int y=0;y<height;y++)
+				if(random.nextBoolean(density))
+					space.setObjectLocation(new Object(), x, y);
+		MooreNeighborhood neighborhood = new MooreNeighborhood(space);
+		for(int pass=0;pass<3;pass++) {//the first passes warm up the JIT
+			long sum = 0;
+			long bytes = allocatedBytes();
+			long t = System.nanoTime();
+			for(int i=0;i<calls;i++)
+				sum += space.getMooreNeighbors(random.nextInt(width), random.nextInt(height), radius, SparseGrid2D.TOROIDAL, false).numObjs;
+			long grid = System.nanoTime() - t;
+			long gridBytes = allocatedBytes() - bytes;
+			bytes = allocatedBytes();
+			t = System.nanoTime();
+			for(int i=0;i<calls;i++)
+				sum -= neighborhood.neighbors(random.nextInt(width), random.nextInt(height), radius, false).numObjs;
+			long table = System.nanoTime() - t;
+			long tableBytes = allocatedBytes() - bytes;
+			System.out.printf("pass %d: SparseGrid2D %.1f ns %.1f bytes per call, MooreNeighborhood %.1f ns %.1f bytes per call, checksum %d%n",
+					pass, grid / (double)calls, gridBytes / (double)calls, table / (double)calls, tableBytes / (double)calls, sum);
+		}
+	}
+}
@@ -0,0 +1,238 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.io.Serializable;
+
+import ec.util.MersenneTwisterFast;
+
+/**
+ * The n-person ultimatum game (playMode Group.COALITIONS).  Each round the players of a
+ * group are shuffled and partitioned into coalitions of proposers + recipients players, the
+ * first proposers of each coalition proposing and the others receiving.  Each proposer
+ * offers its offer of an endowment to the recipients of its coalition, who each accept if
+ * the offer is at least their accept.  The proposal goes through under acceptanceRule:
+ * UNANIMITY (every recipient accepts), MAJORITY (more than half) or THRESHOLD (at least
+ * acceptanceThreshold of the recipients).  Then the proposer keeps its share of the
+ * endowment, drawn from tnormal, and the offer is split equally among the recipients.
+ * As in the half games of Group.ug, players left over when the group does not divide into
+ * coalitions take random seats in one more coalition filled with players drawn from the
+ * others, and only the players left over gain from it.  A group smaller than a coalition
+ * plays as one coalition with at most proposers proposers and at least one recipient.
+ * With one proposer and one recipient this is the game of Group.ug.
+ *
+ * Players are kept as offer and accept indices in primitive arrays and coalitions as
+ * positions in an index buffer, which are reused, so a round allocates nothing.  One game
+ * is shared by the groups of an Environment.
+ */
+public class NPersonGame implements Serializable {
+	private static final long serialVersionUID = 1L;
+	public static final int UNANIMITY = 0;
+	public static final int MAJORITY = 1;
+	public static final int THRESHOLD = 2;
+	int players = 0; //number of players
+	int[] offer = new int[64]; //offer index of each player
+	int[] accept = new int[64]; //accept index of each player
+	double[] gain = new double[64]; //resources gained by each player in the round
+	double[] endowment = new double[64]; //endowment of each player's last accepted proposal, 0 if none
+	int[] order = new int[64]; //players in shuffled order, coalitions are consecutive
+	int[] seat = new int[16]; //players of the coalition of left over players
+	boolean[] paid = new boolean[64]; //players that gain from the coalition being played
+
+	/**
+	 * Removes all players, keeping room for n players.
+	 * @param n
+	 */
+	public void clear(int n) {
+		players = 0;
+		if(offer.length < n) {
+			final int size = Math.max(n, 2 * offer.length);
+			offer = new int[size];
+			accept = new int[size];
+			gain = new double[size];
+			endowment = new double[size];
+			order = new int[size];
+			paid = new boolean[size];
+		}
+	}
+
+	/**
+	 * Adds a player.
+	 * @param offerIndex
+	 * @param acceptIndex
+	 */
+	public void add(int offerIndex, int acceptIndex) {
+		offer[players] = offerIndex;
+		accept[players] = acceptIndex;
+		gain[players] = 0;
+		endowment[players] = 0;
+		paid[players] = true;
+		players++;
+	}
+
+	/**
+	 * Plays a round, setting gain and endowment.
+	 * @param state
+	 */
+	public void play(Environment state) {
+		final MersenneTwisterFast random = state.random;
+		final int n = players;
+		if(n < 2)
+			return;
+		final int size = Math.max(2, state.proposers + state.recipients);
+		for(int i=0;i<n;i++)
+			order[i] = i;
+		for(int i=n-1;i>0;i--) {
+			final int j = random.nextInt(i + 1);
+			final int t = order[i]; order[i] = order[j]; order[j] = t;
+		}
+		if(n < size) {
+			final int p = Math.max(1, Math.min(state.proposers, n - 1));
+			coalition(state, order, 0, p, n - p);
+			return;
+		}
+		final int p = Math.max(1, Math.min(state.proposers, size - 1));
+		final int full = n - n % size;
+		for(int k=0;k<full;k+=size)
+			coalition(state, order, k, p, size - p);
+		final int m = n - full;
+		if(m == 0)
+			return;
+		if(seat.length < size)
+			seat = new int[size];
+		for(int i=0;i<m;i++)
+			seat[i] = order[full + i];
+		for(int i=0;i<size-m;i++) {//distinct players drawn from the full coalitions fill the other seats
+			final int j = i + random.nextInt(full - i);
+			final int t = order[i]; order[i] = order[j]; order[j] = t;
+			seat[m + i] = order[i];
+			paid[order[i]] = false;
+		}
+		for(int i=size-1;i>0;i--) {//the left over players take random seats
+			final int j = random.nextInt(i + 1);
+			final int t = seat[i]; seat[i] = seat[j]; seat[j] = t;
+		}
+		coalition(state, seat, 0, p, size - p);
+		for(int i=0;i<size;i++)
+			paid[seat[i]] = true;
+	}
+
+	/**
+	 * Plays the coalition of players[start, start + p + r): p proposers followed by r
+	 * recipients.
+	 * @param state
+	 * @param players
+	 * @param start
+	 * @param p
+	 * @param r
+	 */
+	void coalition(Environment state, int[] players, int start, int p, int r) {
+		final int needed;
+		switch(state.acceptanceRule) {
+		case MAJORITY: needed = r / 2 + 1; break;
+		case THRESHOLD: needed = Math.max(0, (int)Math.ceil(state.acceptanceThreshold * r - 1e-9)); break;
+		default: needed = r;
+		}
+		for(int i=start;i<start+p;i++) {
+			final int proposer = players[i];
+			final int level = offer[proposer];//meets the accepts up to its level
+			int yes = 0;
+			for(int j=start+p;j<start+p+r;j++) {
+				if(accept[players[j]] <= level)
+					yes++;
+			}
+			if(yes < needed)
+				continue;
+			final double e = state.tnormal.nextTN();
+			if(paid[proposer]) {
+				gain[proposer] += state.keepFraction[offer[proposer]] * e;
+				endowment[proposer] = e;
+			}
+			final double share = state.giveFraction[offer[proposer]] * e / r;
+			for(int j=start+p;j<start+p+r;j++) {
+				if(paid[players[j]])
+					gain[players[j]] += share;
+			}
+		}
+	}
+
+	/**
+	 * Plays a round of the n-person game in a group of agents.
+	 * @param g
+	 */
+	public void ug(Group g) {
+		final Environment state = g.state;
+		final Object[] members = g.members.objs;
+		final int n = g.members.numObjs;
+		clear(n);
+		for(int i=0;i<n;i++) {
+			Agent a = (Agent)members[i];
+			add(a.offerIndex, a.acceptIndex);
+		}
+		play(state);
+		for(int i=0;i<n;i++) {
+			if(gain[i] == 0)
+				continue;
+			Agent a = (Agent)members[i];
+			a.addResources(gain[i]);
+			if(endowment[i] > 0) {//its proposal went through
+				a.setEndowment(endowment[i]);
+				a.currentOffer = a.getOffer();
+			}
+		}
+	}
+
+	/**
+	 * Throughput of rounds of the n-person game, in ns per player, for groups of -size
+	 * players with random strategies and coalitions of 2 to -max players (one proposer, or
+	 * -proposers).
+	 * @param args -size -max -proposers -rounds -rule -seed
+	 */
+	public static void main(String[] args) {
+		String size = GUI.argumentForKey("-size", args);
+		String max = GUI.argumentForKey("-max", args);
+		String proposers = GUI.argumentForKey("-proposers", args);
+		String rounds = GUI.argumentForKey("-rounds", args);
+		String rule = GUI.argumentForKey("-rule", args);
+		String seed = GUI.argumentForKey("-seed", args);
+		final int n = size == null ? 40 : Integer.parseInt(size);
+		final int largest = max == null ? 16 : Integer.parseInt(max);
+		final int r = rounds == null ? 200000 : Integer.parseInt(rounds);
+		Environment state = new Environment(seed == null ? 1 : Long.parseLong(seed));
+		state.acceptanceRule = rule == null ? UNANIMITY : Integer.parseInt(rule);
+		state.calulateOfferList();
+		final int levels = state.offerArray.length;
+		int[] offers = new int[n];
+		int[] accepts = new int[n];
+		for(int i=0;i<n;i++) {
+			offers[i] = state.random.nextInt(levels);
+			accepts[i] = state.random.nextInt(levels);
+		}
+		NPersonGame game = new NPersonGame();
+		for(int c=2;c<=largest;c++) {
+			state.proposers = proposers == null ? 1 : Math.min(c - 1, Integer.parseInt(proposers));
+			state.recipients = c - state.proposers;
+			state.autoCalculateGame();//the endowment grows with the coalition
+			double total = 0;
+			long time = 0;
+			for(int pass=0;pass<2;pass++) {//the first pass warms up the JIT compiler
+				total = 0;
+				long t = System.nanoTime();
+				for(int k=0;k<r;k++) {
+					game.clear(n);
+					for(int i=0;i<n;i++)
+						game.add(offers[i], accepts[i]);
+					game.play(state);
+					for(int i=0;i<n;i++)
+						total += game.gain[i];
+				}
+				time = System.nanoTime() - t;
+			}
+			System.out.printf("coalition %2d (%d proposers, %2d recipients): %6.1f ns per player, mean gain %.3f%n",
+					c, state.proposers, state.recipients, time / ((double)r * n), total / ((double)r * n));
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.io.Serializable;
+
+import ec.util.MersenneTwisterFast;
+
+/**
+ * Bernoulli trials of a rare event (mutation, dispersal at birth, global dispersal of a
+ * fission group).  With geometricSampling, the number of trials until the next event is
+ * drawn from the geometric distribution when an event occurs, and the trials between
+ * events are counted down without drawing, so each event costs one draw instead of one
+ * draw per trial.  The events are the same Bernoulli process; only the stream of random
+ * numbers differs.  Otherwise each trial is random.nextBoolean(p), as in earlier versions.
+ * The countdown starts over when p changes (for example from the console).
+ */
+public class RareEvent implements Serializable {
+	private static final long serialVersionUID = 1L;
+	final boolean geometric;
+	double p = Double.NaN; //probability of the countdown
+	long skip = 0; //trials without the event before the next event
+
+	public RareEvent(boolean geometric) {
+		super();
+		this.geometric = geometric;
+	}
+
+	/**
+	 * Starts the countdown over at the next trial, drawing it from the random stream at that
+	 * time.  The gaps are memoryless, so this does not change the process.
+	 */
+	public void reset() {
+		p = Double.NaN;
+		skip = 0;
+	}
+
+	/**
+	 * A trial.
+	 * @param random
+	 * @param p probability of the event
+	 * @return true if the event occurs
+	 */
+	public boolean next(MersenneTwisterFast random, double p) {
+		if(!geometric)
+			return random.nextBoolean(p);
+		if(p != this.p) {
+			this.p = p;
+			skip = gap(random, p);
+		}
+		if(skip > 0) {
+			skip--;
+			return false;
+		}
+		skip = gap(random, p);
+		return true;
+	}
+
+	/**
+	 * Number of trials without the event before the next one, geometric with parameter p.
+	 * @param random
+	 * @param p
+	 * @return
+	 */
+	static long gap(MersenneTwisterFast random, double p) {
+		if(p <= 0)
+			return Long.MAX_VALUE;
+		if(p >= 1)
+			return 0;
+		return (long)Math.floor(Math.log(1.0 - random.nextDouble()) / Math.log1p(-p));//1 - u is in (0, 1]
+	}
+
+	/**
+	 * Compares the countdown with Bernoulli draws for the default mutation, dispersal and
+	 * global group dispersion rates (or -p): the frequency of events, with its z score
+	 * against p and the z score of the difference between the two samplers, the variance to
+	 * mean ratio of the events in blocks of 100 trials (1 - p for independent trials), and
+	 * the time per trial.
+	 * @param args -trials -seed -p
+	 */
+	public static void main(String[] args) {
+		String trials = GUI.argumentForKey("-trials", args);
+		String seed = GUI.argumentForKey("-seed", args);
+		String rate = GUI.argumentForKey("-p", args);
+		final long n = trials == null ? 100000000L : Long.parseLong(trials);
+		MersenneTwisterFast random = new MersenneTwisterFast(seed == null ? 1 : Long.parseLong(seed));
+		Environment defaults = new Environment(1);
+		double[] ps = rate != null ? new double[]{Double.parseDouble(rate)}
+				: new double[]{defaults.mutationRate, defaults.dispersalRate, defaults.globalGroupDispersion};
+		String[] names = rate != null ? new String[]{"p"} : new String[]{"mutationRate", "dispersalRate", "globalGroupDispersion"};
+		final int block = 100;
+		for(int i=0;i<ps.length;i++) {
+			final double p = ps[i];
+			long[] events = new long[2];
+			for(int g=0;g<2;g++) {
+				RareEvent e = new RareEvent(g == 1);
+				double sum = 0, sumSq = 0;
+				int inBlock = 0;
+				long t = System.nanoTime();
+				for(long k=1;k<=n;k++) {
+					if(e.next(random, p)) {
+						events[g]++;
+						inBlock++;
+					}
+					if(k % block == 0) {
+						sum += inBlock;
+						sumSq += (double)inBlock * inBlock;
+						inBlock = 0;
+					}
+				}
+				t = System.nanoTime() - t;
+				final double blocks = n / block;
+				final double mean = sum / blocks;
+				final double ratio = (sumSq / blocks - mean * mean) / mean;
+				final double z = (events[g] - n * p) / Math.sqrt(n * p * (1 - p));
+				System.out.printf("%-22s %-10s p %.4f frequency %.6f z %6.2f variance/mean %.4f (expected %.4f) %.2f ns per trial%n",
+						names[i], g == 1 ? "geometric" : "bernoulli", p, events[g] / (double)n, z, ratio, 1 - p, t / (double)n);
+			}
+			System.out.printf("%-22s difference z %.2f%n", names[i], (events[1] - events[0]) / Math.sqrt(2 * n * p * (1 - p)));
+		}
+	}
+}
@@ -0,0 +1,246 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * On-disk cache of the data rows of sweep runs.  A run is identified by the SHA-256 hash
+ * of MODEL_VERSION, its seed, and every public primitive and String field of an
+ * Environment after the fixed and cell parameters have been set, so a run is found again
+ * however its parameters were written in the script, and any parameter that is not swept
+ * still changes the key.  Each run is a file of rows named by its key, and an index file
+ * keeps the keys with their sizes from least to most recently used.  When the files
+ * exceed maxBytes, the least recently used are deleted.
+ *
+ * Usage: java groupModel.ResultCache -dir sweepcache [-invalidate all|key]
+ * prints the size of the cache, or deletes all runs or the runs whose keys start with key.
+ */
+public class ResultCache {
+	/**
+	 * Version tag of the model in the keys.  Change it when a change to the model changes
+	 * the results of runs, so runs of the old model are no longer served.
+	 */
+	public static final String MODEL_VERSION = "groupModel-2025.12.7";
+	static final String INDEX = "index.txt";
+	static final String SUFFIX = ".rows";
+	final File dir;
+	long maxBytes; //size of the cache above which runs are evicted
+	long bytes = 0; //size of the runs in the cache
+	LinkedHashMap<String, Long> index = new LinkedHashMap<String, Long>(16, 0.75f, true); //sizes of runs in order of use
+
+	public ResultCache(File dir, long maxBytes) throws IOException {
+		super();
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+		if(!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Cannot create the cache directory "+dir);
+		readIndex();
+	}
+
+	/**
+	 * The key of a run: the hash of the model version, the seed and the resolved parameters.
+	 * @param fixed
+	 * @param cell
+	 * @param seed
+	 * @return
+	 */
+	public static String key(ArrayList<ArrayList<Object>> fixed, ArrayList<ArrayList<Object>> cell, long seed) {
+		Environment state = new Environment(seed);
+		HeadlessRun.setParameters(state, fixed);
+		HeadlessRun.setParameters(state, cell);
+		StringBuilder b = new StringBuilder(MODEL_VERSION).append('\n').append(seed).append('\n');
+		Field[] fields = state.getClass().getFields();
+		Arrays.sort(fields, Comparator.comparing(Field::getName));
+		for(Field f : fields) {
+			if(Modifier.isStatic(f.getModifiers()) || !(f.getType().isPrimitive() || f.getType() == String.class))
+				continue;
+			try {
+				b.append(f.getName()).append('=').append(f.get(state)).append('\n');
+			} catch (IllegalAccessException e) {
+				//public fields are accessible
+			}
+		}
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(b.toString().getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder(64);
+			for(byte x : hash)
+				hex.append(String.format("%02x", x));
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);//every Java platform has SHA-256
+		}
+	}
+
+	/**
+	 * The rows of a run, or null if the run is not in the cache.
+	 * @param key
+	 * @return
+	 */
+	public synchronized ArrayList<double[]> get(String key) {
+		if(index.get(key) == null)//get, not containsKey, marks the run as used
+			return null;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file(key))))) {
+			final int n = in.readInt();
+			ArrayList<double[]> rows = new ArrayList<double[]>(n);
+			for(int i=0;i<n;i++) {
+				double[] row = new double[in.readInt()];
+				for(int j=0;j<row.length;j++)
+					row[j] = in.readDouble();
+				rows.add(row);
+			}
+			writeIndex();//the run is now the most recently used
+			return rows;
+		} catch (IOException e) {
+			System.out.println("Cached run "+key+" cannot be read ("+e.getMessage()+"), running it again.");
+			remove(key);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the rows of a run and evicts the least recently used runs if the cache is full.
+	 * @param key
+	 * @param rows
+	 */
+	public synchronized void put(String key, ArrayList<double[]> rows) {
+		File f = file(key);
+		File tmp = new File(dir, key+".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				out.writeInt(rows.size());
+				for(double[] row : rows) {
+					out.writeInt(row.length);
+					for(double x : row)
+						out.writeDouble(x);
+				}
+			}
+			Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			System.out.println("Run "+key+" cannot be cached: "+e.getMessage());
+			tmp.delete();
+			return;
+		}
+		Long old = index.put(key, f.length());
+		bytes += f.length() - (old == null ? 0 : old);
+		Iterator<Map.Entry<String, Long>> lru = index.entrySet().iterator();
+		while(bytes > maxBytes && lru.hasNext()) {
+			Map.Entry<String, Long> e = lru.next();
+			if(e.getKey().equals(key))
+				continue;
+			file(e.getKey()).delete();
+			bytes -= e.getValue();
+			lru.remove();
+		}
+		writeIndex();
+	}
+
+	/**
+	 * Deletes the runs whose keys start with prefix, all runs for the empty prefix.
+	 * @param prefix
+	 * @return number of runs deleted
+	 */
+	public synchronized int invalidate(String prefix) {
+		ArrayList<String> keys = new ArrayList<String>();
+		for(String key : index.keySet()) {
+			if(key.startsWith(prefix))
+				keys.add(key);
+		}
+		for(String key : keys)
+			remove(key);
+		return keys.size();
+	}
+
+	void remove(String key) {
+		Long size = index.remove(key);
+		if(size != null)
+			bytes -= size;
+		file(key).delete();
+		writeIndex();
+	}
+
+	File file(String key) {
+		return new File(dir, key+SUFFIX);
+	}
+
+	/**
+	 * Reads the index.  Runs in the directory that are not in the index, left by a sweep
+	 * stopped before the index was written, are taken as the least recently used.
+	 * @throws IOException
+	 */
+	void readIndex() throws IOException {
+		File f = new File(dir, INDEX);
+		LinkedHashMap<String, Long> listed = new LinkedHashMap<String, Long>();
+		if(f.exists()) {
+			for(String line : Files.readAllLines(f.toPath())) {
+				String[] s = line.trim().split("\\s+");
+				if(s.length == 2 && file(s[0]).exists())
+					listed.put(s[0], file(s[0]).length());
+			}
+		}
+		File[] files = dir.listFiles();
+		for(int i=0;files!=null && i<files.length;i++) {
+			String name = files[i].getName();
+			if(name.endsWith(SUFFIX)) {
+				String key = name.substring(0, name.length() - SUFFIX.length());
+				if(!listed.containsKey(key))
+					index.put(key, files[i].length());
+			}
+		}
+		index.putAll(listed);
+		bytes = 0;
+		for(long size : index.values())
+			bytes += size;
+	}
+
+	/**
+	 * Writes the index, from the least to the most recently used run.
+	 */
+	void writeIndex() {
+		File tmp = new File(dir, INDEX+".tmp");
+		try {
+			try (PrintWriter out = new PrintWriter(tmp)) {
+				for(Map.Entry<String, Long> e : index.entrySet())
+					out.println(e.getKey()+" "+e.getValue());
+			}
+			Files.move(tmp.toPath(), new File(dir, INDEX).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			System.out.println("Cache index cannot be written: "+e.getMessage());
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		String dir = GUI.argumentForKey("-dir", args);
+		String invalidate = GUI.argumentForKey("-invalidate", args);
+		ResultCache cache = new ResultCache(new File(dir == null ? "sweepcache" : dir), Long.MAX_VALUE);
+		if(invalidate != null) {
+			int n = cache.invalidate(invalidate.equals("all") ? "" : invalidate);
+			System.out.println("Deleted "+n+" cached runs.");
+		}
+		System.out.println("Cache "+cache.dir+": "+cache.index.size()+" runs, "+cache.bytes+" bytes.");
+	}
+}
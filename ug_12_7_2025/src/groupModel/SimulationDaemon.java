@@ -0,0 +1,221 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+
+import sweep.GUIStateSweep;
+
+/**
+ * Runs simulations on request in one long-lived JVM, so a run of a few seconds does not
+ * pay for starting the JVM, loading MASON and compiling Group.ug and Agent.step again.
+ * Requests come on stdin, or on a localhost socket with -port, where each connection is
+ * served by its own thread.  The requests and the task and parameter lines are those of
+ * SweepCoordinator and SweepWorker:
+ *
+ * FIXED followed by parameters: parameters of the following tasks, answered by OK.
+ * TASK id cell rep seed followed by parameters: runs a simulation of the fixed and task
+ * parameters.
+ * SCRIPT file [seed]: runs the tasks of a script file (every cell of its sweep, simNumber
+ * replicates), each announced by its TASK line.
+ * QUIT ends the connection, SHUTDOWN stops the daemon.
+ *
+ * The rows of a run are sent as the Experimenter records them, as "ROW id" followed by
+ * the tab separated row, and the run ends with "END id n" (n rows) or "FAIL id why".
+ * Each run has its own Environment, Experimenter and random number generator, and the
+ * model keeps no static state, so a run gives the same rows as in a new JVM; between runs
+ * the daemon clears the static chart switches of GUIStateSweep so runs stay headless.
+ * On stdin, the simulation's messages go to stderr and stdout carries only replies.
+ *
+ * Usage: java groupModel.SimulationDaemon [-port 5100] [-warmup 2]
+ */
+public class SimulationDaemon {
+	final PrintWriter out;
+	ArrayList<ArrayList<Object>> fixed = new ArrayList<ArrayList<Object>>(); //fixed parameters of the session
+
+	public SimulationDaemon(PrintWriter out) {
+		super();
+		this.out = out;
+	}
+
+	/**
+	 * Clears the state shared between runs.  Runs are headless, so no charts are updated.
+	 */
+	public static void reset() {
+		GUIStateSweep.chartTypeXY = false;
+		GUIStateSweep.arrayChartTypeXY = false;
+		GUIStateSweep.chartTypeH = false;
+		GUIStateSweep.arrayChartTypeH = false;
+	}
+
+	/**
+	 * Runs a task, sending its rows as they are recorded.
+	 * @param task
+	 * @return number of rows
+	 */
+	public int run(SweepTask task) {
+		reset();
+		int sent = 0;
+		try {
+			Environment state = HeadlessRun.makeEnvironment(fixed, task.parameters, task.seed);
+			state.start();
+			final ArrayList<double[]> rows = state.experimenter.rows;
+			while(state.schedule.getSteps() < state.simLength) {//as HeadlessRun.runToEnd
+				if(!state.schedule.step(state))
+					break;
+				if(sent < rows.size())
+					sent = send(task.id, rows, sent);
+			}
+			state.finish();
+			sent = send(task.id, rows, sent);
+			out.println("END "+task.id+" "+sent);
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			out.println("FAIL "+task.id+" "+e);
+		}
+		out.flush();
+		return sent;
+	}
+
+	/**
+	 * Sends the rows from the first not yet sent.
+	 * @param id
+	 * @param rows
+	 * @param from
+	 * @return number of rows sent in all
+	 */
+	int send(long id, ArrayList<double[]> rows, int from) {
+		for(int i=from;i<rows.size();i++) {
+			double[] row = rows.get(i);
+			StringBuilder b = new StringBuilder("ROW ").append(id);
+			for(int j=0;j<row.length;j++)
+				b.append('\t').append(row[j]);
+			out.println(b.toString());
+		}
+		out.flush();
+		return rows.size();
+	}
+
+	/**
+	 * Runs every task of a script file: the cells of its sweep, each with simNumber
+	 * replicates, as SweepCoordinator would hand them out.
+	 * @param scriptName
+	 * @param seed
+	 * @throws IOException
+	 */
+	public void runScript(String scriptName, long seed) throws IOException {
+		SweepCoordinator c = new SweepCoordinator(scriptName, null, 100, 0, seed);
+		ArrayList<ArrayList<Object>> session = fixed;
+		fixed = c.fixed;
+		try {
+			while(c.nextId < c.totalTasks) {
+				SweepTask task = c.newTask();
+				task.write(out);
+				run(task);
+			}
+		} finally {
+			fixed = session;
+		}
+	}
+
+	/**
+	 * Serves requests until QUIT, SHUTDOWN or the end of the input.
+	 * @param in
+	 * @return true if the daemon is to stop
+	 * @throws IOException
+	 */
+	public boolean serve(BufferedReader in) throws IOException {
+		String line;
+		while((line = in.readLine()) != null) {
+			line = line.trim();
+			if(line.isEmpty())
+				continue;
+			if(line.startsWith("FIXED")) {
+				fixed = SweepTask.readParameters(in);
+				out.println("OK");
+			}
+			else if(line.startsWith("TASK"))
+				run(SweepTask.read(line, in));
+			else if(line.startsWith("SCRIPT")) {
+				String[] s = line.split("\\s+");
+				try {
+					runScript(s[1], s.length > 2 ? Long.parseLong(s[2]) : System.currentTimeMillis());
+					out.println("DONE");
+				} catch (IOException | RuntimeException e) {
+					out.println("ERROR "+e);
+				}
+			}
+			else if(line.startsWith("QUIT"))
+				return false;
+			else if(line.startsWith("SHUTDOWN"))
+				return true;
+			else
+				out.println("ERROR unknown request "+line);
+			out.flush();
+		}
+		return false;
+	}
+
+	/**
+	 * Runs short simulations so the simulation code is compiled before the first request.
+	 * @param k number of simulations
+	 */
+	static void warmUp(int k) {
+		SimulationDaemon d = new SimulationDaemon(new PrintWriter(OutputStream.nullOutputStream()));
+		d.fixed.add(SweepTask.parameter("int", "n", 1000));
+		d.fixed.add(SweepTask.parameter("int", "maxN", 1000));
+		d.fixed.add(SweepTask.parameter("int", "groups", 100));
+		d.fixed.add(SweepTask.parameter("int", "generations", 20));
+		for(int i=0;i<k;i++)
+			d.run(new SweepTask(i, 0, i, i + 1, new ArrayList<ArrayList<Object>>()));
+	}
+
+	public static void main(String[] args) throws IOException {
+		String port = GUI.argumentForKey("-port", args);
+		String warmup = GUI.argumentForKey("-warmup", args);
+		final PrintStream stdout = System.out;
+		System.setOut(System.err);//messages of the simulation do not mix with the replies
+		warmUp(warmup == null ? 2 : Integer.parseInt(warmup));
+		if(port == null) {
+			SimulationDaemon d = new SimulationDaemon(new PrintWriter(stdout));
+			d.serve(new BufferedReader(new InputStreamReader(System.in)));
+			return;
+		}
+		try (ServerSocket server = new ServerSocket(Integer.parseInt(port), 50, InetAddress.getLoopbackAddress())) {
+			System.err.println("Simulation daemon on port "+server.getLocalPort());
+			while(true) {
+				final Socket socket = server.accept();
+				Thread t = new Thread("SimulationDaemon connection") {
+					public void run() {
+						try {
+							SimulationDaemon d = new SimulationDaemon(new PrintWriter(socket.getOutputStream()));
+							if(d.serve(new BufferedReader(new InputStreamReader(socket.getInputStream()))))
+								System.exit(0);
+						} catch (IOException e) {
+							System.err.println("Connection lost: "+e.getMessage());
+						} finally {
+							try {
+								socket.close();
+							} catch (IOException e) {
+							}
+						}
+					}
+				};
+				t.setDaemon(true);
+				t.start();
+			}
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+import sim.util.Bag;
+import sweep.GUIStateSweep;
+import sweep.ParameterSweeper;
+
+/**
+ * In-memory snapshot of a running Environment: its agents, groups, space and schedule.
+ * A long warm-up can be run once and the snapshot forked into many runs, each with a
+ * fresh random number stream and its own parameters.  The snapshot is kept as serialized
+ * bytes, which forks only read, so any number of forks can be made from it in parallel.
+ * The observer, GUI and parameter sweeper are not part of the snapshot; each fork gets
+ * a new headless experimenter in place of the observer.  The offer array does not change
+ * during a run and is shared by all forks rather than copied.
+ */
+public class Snapshot {
+	enum Shared { OBSERVER, OFFER_ARRAY } //objects written as references to the fork's own or shared objects
+
+	final byte[] bytes; //the serialized environment
+	final double[] offerArray; //shared by all forks
+	public final long step; //step at which the snapshot was taken
+
+	/**
+	 * Takes a snapshot of a started environment between steps.
+	 * @param state
+	 * @throws IOException
+	 */
+	public Snapshot(Environment state) throws IOException {
+		super();
+		step = state.schedule.getSteps();
+		offerArray = state.offerArray;
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		ObjectOutputStream out = new Writer(b, state);
+		out.writeObject(state);
+		out.close();
+		bytes = b.toByteArray();
+	}
+
+	public int size() {
+		return bytes.length;
+	}
+
+	class Writer extends ObjectOutputStream {
+		Environment state;
+
+		Writer(OutputStream out, Environment state) throws IOException {
+			super(out);
+			this.state = state;
+			enableReplaceObject(true);
+		}
+
+		protected Object replaceObject(Object obj) {
+			if(obj == state.observer)
+				return Shared.OBSERVER;
+			if(obj == offerArray)
+				return Shared.OFFER_ARRAY;
+			if(obj instanceof GUIStateSweep || obj instanceof ParameterSweeper)
+				return null;
+			return obj;
+		}
+	}
+
+	class Reader extends ObjectInputStream {
+		Experimenter experimenter;
+
+		Reader(InputStream in, Experimenter experimenter) throws IOException {
+			super(in);
+			this.experimenter = experimenter;
+			enableResolveObject(true);
+		}
+
+		protected Object resolveObject(Object obj) {
+			if(obj == Shared.OBSERVER)
+				return experimenter;
+			if(obj == Shared.OFFER_ARRAY)
+				return offerArray;
+			return obj;
+		}
+	}
+
+	/**
+	 * Makes a copy of the snapshot that continues with a new random number stream and
+	 * parameters, and with a headless experimenter that collects data from the fork step
+	 * on.  The simulation length and burn in are recalculated from the fork's parameters,
+	 * counting from the start of the warm-up.  Living agents take the io and ibiTau of the
+	 * fork.  The offer lattice is shared by the forks, so n_intervals cannot be changed.
+	 * @param seed
+	 * @param parameters parameters that differ from the warm-up, may be empty
+	 * @return the forked environment, ready to be stepped
+	 */
+	public Environment fork(long seed, ArrayList<ArrayList<Object>> parameters) {
+		Experimenter experimenter = HeadlessRun.makeExperimenter(new Environment(seed));
+		Environment state;
+		try {
+			Reader in = new Reader(new ByteArrayInputStream(bytes), experimenter);
+			state = (Environment)in.readObject();
+			in.close();
+		} catch (IOException | ClassNotFoundException e) {
+			throw new IllegalStateException("Cannot fork the snapshot: "+e);
+		}
+		final int intervals = state.n_intervals;
+		HeadlessRun.setParameters(state, parameters);
+		if(state.n_intervals != intervals)
+			throw new IllegalArgumentException("A fork cannot change n_intervals, the offer lattice of the snapshot is shared by its forks.");
+		state.random.setSeed(seed);//shared by the agents, groups and distributions of the fork
+		if(state.mutation != null) {//countdowns drawn in the warm-up would be the same in every fork
+			state.mutation.reset();
+			state.dispersal.reset();
+			state.globalDispersal.reset();
+		}
+		state.autoCalculationSimulationControl();//rebuilds the resource distributions
+		Bag groups = state.sparseSpace.getAllObjects();
+		final long tick = (long)state.schedule.getTime();
+		for(int i=0;i<groups.numObjs;i++) {
+			Group g = (Group)groups.objs[i];
+			for(int j=0;j<g.members.numObjs;j++) {
+				Agent a = (Agent)g.members.objs[j];
+				a.uniform = state.uniform;
+				a.io = state.io;//agents keep the values they were born with
+				a.ibiTau = state.ibiTau;
+				if(state.eventDriven)
+					a.resourcesChanged(tick);//io may now be reached sooner
+			}
+		}
+		if(state.observer == null) {//the snapshot was taken without an experimenter
+			experimenter.initialize(state.sparseSpace, state.spaces);//schedules the experimenter
+			state.observer = experimenter;
+		}
+		else {//the experimenter is already on the schedule in place of the observer
+			experimenter.setState(state);
+			experimenter.setSparseSpaceGrid(state.sparseSpace);
+			experimenter.setSpaces(state.spaces);
+			experimenter.event = () -> state.schedule.clear();
+		}
+		experimenter.setObservationInterval(state.dataSamplingInterval);
+		state.experimenter = experimenter;
+		experimenter.initialize(state, state.offerArray);
+		return state;
+	}
+
+	/**
+	 * Forks the snapshot and runs the fork to the end of the simulation.
+	 * @param seed
+	 * @param parameters
+	 * @return the data rows of the fork
+	 */
+	public ArrayList<double[]> run(long seed, ArrayList<ArrayList<Object>> parameters) {
+		Environment state = fork(seed, parameters);
+		HeadlessRun.runToEnd(state);
+		state.finish();
+		return state.experimenter.rows;
+	}
+
+	/**
+	 * Runs an environment from its start for a number of generations and takes a snapshot.
+	 * @param fixed
+	 * @param cell
+	 * @param seed
+	 * @param generations
+	 * @return
+	 * @throws IOException
+	 */
+	public static Snapshot warmUp(ArrayList<ArrayList<Object>> fixed, ArrayList<ArrayList<Object>> cell, long seed,
+			int generations) throws IOException {
+		Environment state = HeadlessRun.makeEnvironment(fixed, cell, seed);
+		state.start();
+		final long steps = (long)generations * (long)state.averageAge;
+		while(state.schedule.getSteps() < steps) {
+			if(!state.schedule.step(state))
+				break;
+		}
+		return new Snapshot(state);
+	}
+
+	/**
+	 * Runs the tasks of a sweep as forks of a snapshot on a number of threads.
+	 * @param c
+	 * @param threads
+	 * @throws InterruptedException
+	 */
+	public void runSweep(SweepCoordinator c, int threads) throws InterruptedException {
+		Thread[] workers = new Thread[threads];
+		for(int i=0;i<threads;i++) {
+			workers[i] = new Thread(() -> {
+				while(!c.isDone()) {
+					SweepTask task = c.claim();
+					if(task == null) {
+						try {
+							Thread.sleep(100);//wait for other threads to finish their tasks
+						} catch (InterruptedException e) {
+							return;
+						}
+						continue;
+					}
+					try {
+						c.complete(task, run(task.seed, task.parameters));
+					} catch (RuntimeException e) {
+						c.fail(task, e.toString());
+					}
+				}
+			});
+			workers[i].start();
+		}
+		for(int i=0;i<threads;i++)
+			workers[i].join();
+	}
+
+	public static void main(String[] args) throws Exception {
+		String script = GUI.argumentForKey("-script", args);
+		String design = GUI.argumentForKey("-design", args);
+		String samples = GUI.argumentForKey("-samples", args);
+		String out = GUI.argumentForKey("-out", args);
+		String reps = GUI.argumentForKey("-reps", args);
+		String seed = GUI.argumentForKey("-seed", args);
+		String warmup = GUI.argumentForKey("-warmup", args);
+		String threads = GUI.argumentForKey("-threads", args);
+		String runFile = GUI.argumentForKey("-runfile", args);
+		String precision = GUI.argumentForKey("-precision", args);
+
+		SweepCoordinator c = new SweepCoordinator(script == null ? "script.txt" : script, design,
+				samples == null ? 100 : Long.parseLong(samples), reps == null ? 0 : Integer.parseInt(reps),
+				seed == null ? System.currentTimeMillis() : Long.parseLong(seed));
+		if(precision != null) c.precision = "%."+Integer.parseInt(precision)+"f";
+		c.results = new PrintWriter(new FileWriter(out == null ? "sweep.txt" : out));
+		c.writeHeader(runFile == null ? null : SweepCoordinator.columnHeaders(runFile));
+
+		int generations = warmup == null ? 0 : Integer.parseInt(warmup);
+		Snapshot s = warmUp(c.fixed, c.design.cell(0), c.baseSeed, generations);
+		System.out.println("Warm-up of "+generations+" generations ("+s.step+" steps), snapshot of "+s.size()+" bytes");
+		System.out.println("Forks: "+c.cells+" cells x "+c.reps+" replicates = "+c.totalTasks+" runs, base seed "+c.baseSeed);
+		s.runSweep(c, threads == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads));
+		c.results.close();
+		System.out.println("Forks finished, "+c.failed+" runs failed.");
+	}
+}
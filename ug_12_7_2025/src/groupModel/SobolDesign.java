@@ -0,0 +1,97 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.util.ArrayList;
+
+/**
+ * Sobol design with n cells for up to 21 parameters. Points are computed directly from
+ * the Gray code of the cell index, so any cell can be made without generating the ones
+ * before it. Direction numbers are from Joe and Kuo (2008), new-joe-kuo-6.21201. The
+ * first point of the sequence (the origin) is skipped.
+ */
+public class SobolDesign extends DesignSpace {
+	static final int BITS = 32;
+	/* degree s, coefficients a and initial direction numbers m of dimensions 2 to 21 */
+	static final int[][] JOE_KUO = {
+			{1, 0, 1},
+			{2, 1, 1, 3},
+			{3, 1, 1, 3, 1},
+			{3, 2, 1, 1, 1},
+			{4, 1, 1, 1, 3, 3},
+			{4, 4, 1, 3, 5, 13},
+			{5, 2, 1, 1, 5, 5, 17},
+			{5, 4, 1, 1, 5, 5, 5},
+			{5, 7, 1, 1, 7, 11, 19},
+			{5, 11, 1, 1, 5, 1, 1},
+			{5, 13, 1, 1, 1, 3, 11},
+			{5, 14, 1, 3, 5, 5, 31},
+			{6, 1, 1, 3, 3, 9, 7, 49},
+			{6, 13, 1, 1, 1, 15, 21, 21},
+			{6, 16, 1, 3, 1, 13, 27, 49},
+			{6, 19, 1, 1, 1, 15, 7, 5},
+			{6, 22, 1, 3, 1, 15, 13, 25},
+			{6, 25, 1, 1, 5, 5, 19, 61},
+			{7, 1, 1, 3, 7, 11, 23, 15, 103},
+			{7, 4, 1, 3, 7, 13, 13, 15, 69}};
+	long n; //number of cells
+	long[][] direction; //direction numbers of each parameter
+
+	public SobolDesign(ArrayList<ArrayList<Object>> swept, long n) {
+		super(swept);
+		if(names.length > JOE_KUO.length + 1)
+			throw new IllegalArgumentException("Sobol designs are limited to "+(JOE_KUO.length + 1)+" parameters.");
+		if(n >= (1L << BITS))
+			throw new IllegalArgumentException("Too many cells for a Sobol design: "+n);
+		this.n = n;
+		direction = new long[names.length][BITS];
+		for(int d=0;d<names.length;d++)
+			direction[d] = directionNumbers(d);
+	}
+
+	/**
+	 * Direction numbers v_k = m_k * 2^(BITS-k) of a dimension.
+	 * @param d dimension, starting at 0
+	 * @return
+	 */
+	static long[] directionNumbers(int d) {
+		long[] v = new long[BITS];
+		if(d == 0) {//van der Corput sequence
+			for(int k=0;k<BITS;k++)
+				v[k] = 1L << (BITS - 1 - k);
+			return v;
+		}
+		int[] p = JOE_KUO[d - 1];
+		int s = p[0];
+		int a = p[1];
+		for(int k=0;k<s && k<BITS;k++)
+			v[k] = (long)p[2 + k] << (BITS - 1 - k);
+		for(int k=s;k<BITS;k++) {
+			v[k] = v[k - s] ^ (v[k - s] >>> s);
+			for(int j=1;j<s;j++) {
+				if(((a >>> (s - 1 - j)) & 1) == 1)
+					v[k] ^= v[k - j];
+			}
+		}
+		return v;
+	}
+
+	public long size() {
+		return n;
+	}
+
+	public Object value(long cell, int dimension) {
+		long i = cell + 1;//skip the origin
+		long gray = i ^ (i >>> 1);
+		long x = 0;
+		long[] v = direction[dimension];
+		for(int k=0;gray != 0;k++, gray >>>= 1) {
+			if((gray & 1) == 1)
+				x ^= v[k];
+		}
+		return fromUnit(dimension, x / (double)(1L << BITS));
+	}
+}
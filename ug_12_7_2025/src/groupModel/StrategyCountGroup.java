@@ -0,0 +1,586 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.util.Arrays;
+
+import sim.engine.SimState;
+import sim.engine.Steppable;
+import sim.util.Bag;
+import sim.util.Int2D;
+import sim.util.IntBag;
+
+/**
+ * A group that keeps the number of members with each strategy (offer index, accept index)
+ * instead of Agent objects, for very large populations where individual identity does not
+ * matter.  Resources, completed IBIs and offspring not yet recorded are pooled for the
+ * members of each strategy.  Each member keeps only the tick at which it dies, drawn at
+ * birth as Agent draws maxAge, in a heap ordered by that tick.  Each step, the members that
+ * reach their maximum age die and each strategy reproduces as often as its pooled resources
+ * (io per offspring) and completed IBIs (members/ibiTau per step) allow (see Members), and
+ * then the members play the ultimatum game with the pairings of Group.ug.  Offspring mutate as in
+ * Agent.mutationStrategies and disperse, and groups fission and disperse, as groups of
+ * agents do.
+ */
+public class StrategyCountGroup extends Group {
+	private static final long serialVersionUID = 1L;
+	int levels; //length of the offer array
+	int[] count; //count[offerIndex * levels + acceptIndex] members with the strategy
+	double[] pooled; //resources of the members with each strategy
+	double[] ready; //members of each strategy that have completed an IBI
+	double[] offspring; //offspring of the members of each strategy not yet recorded at death
+	int n = 0; //number of members
+	long[] due = new long[16]; //heap of deathTick * count.length + strategy, one per member
+	IntBag players = new IntBag(); //strategies of the players in a round
+	int[] died; //deaths of each strategy in a step
+
+	public StrategyCountGroup(Environment state, int x, int y) {
+		super(state, x, y, new Bag());
+		levels = state.offerArray.length;
+		count = new int[levels * levels];
+		pooled = new double[levels * levels];
+		ready = new double[levels * levels];
+		offspring = new double[levels * levels];
+		died = new int[levels * levels];
+	}
+
+	/**
+	 * Adds a member with a strategy.  Its maximum age is drawn as for an Agent, and at
+	 * startup its initial age is uniform between 0 and its maximum age.
+	 * @param state
+	 * @param strategy offerIndex * levels + acceptIndex
+	 * @param startup
+	 */
+	public void add(Environment state, int strategy, boolean startup) {
+		int maxAge = (int)(state.averageAge + state.random.nextGaussian()*state.sdAge*state.averageAge);
+		int age = startup ? state.random.nextInt(maxAge) : 0;
+		long first = startup ? 1 : (long)state.schedule.getTime() + 1;//first tick the member would step
+		push((first + maxAge - age) * count.length + strategy);
+		count[strategy]++;
+		n++;
+		version++;
+	}
+
+	void push(long key) {
+		if(n == due.length)
+			due = Arrays.copyOf(due, 2 * n);
+		int i = n;
+		while(i > 0 && due[(i - 1) / 2] > key) {
+			due[i] = due[(i - 1) / 2];
+			i = (i - 1) / 2;
+		}
+		due[i] = key;
+	}
+
+	/**
+	 * Removes the first entry of the heap of n entries.
+	 */
+	void pop() {
+		final long key = due[n - 1];
+		final int last = n - 1;
+		int i = 0;
+		while(2 * i + 1 < last) {
+			int c = 2 * i + 1;
+			if(c + 1 < last && due[c + 1] < due[c])
+				c++;
+			if(due[c] >= key)
+				break;
+			due[i] = due[c];
+			i = c;
+		}
+		due[i] = key;
+	}
+
+	/**
+	 * Restores the heap order of the first n entries.
+	 */
+	void heapify() {
+		for(int j=n/2-1;j>=0;j--) {
+			final long key = due[j];
+			int i = j;
+			while(2 * i + 1 < n) {
+				int c = 2 * i + 1;
+				if(c + 1 < n && due[c + 1] < due[c])
+					c++;
+				if(due[c] >= key)
+					break;
+				due[i] = due[c];
+				i = c;
+			}
+			due[i] = key;
+		}
+	}
+
+	/**
+	 * Moves all members of another group into this one.
+	 * @param g
+	 */
+	void merge(StrategyCountGroup g) {
+		if(n + g.n > due.length)
+			due = Arrays.copyOf(due, Math.max(2 * due.length, n + g.n));
+		System.arraycopy(g.due, 0, due, n, g.n);
+		for(int s=0;s<count.length;s++) {
+			count[s] += g.count[s];
+			pooled[s] += g.pooled[s];
+			ready[s] += g.ready[s];
+			offspring[s] += g.offspring[s];
+			g.count[s] = 0;
+			g.pooled[s] = 0;
+			g.ready[s] = 0;
+			g.offspring[s] = 0;
+		}
+		n += g.n;
+		g.n = 0;
+		heapify();
+		version++;
+		g.version++;
+	}
+
+	public int size() {
+		return n;
+	}
+
+	public double offerSum() {
+		if(n == 0)
+			return 0;//also before the counts exist, when Group's constructor sets the color
+		double sum = 0;
+		for(int s=0;s<count.length;s++)
+			sum += count[s] * state.offerArray[s / levels];
+		return sum;
+	}
+
+	public double acceptSum() {
+		double sum = 0;
+		for(int s=0;s<count.length;s++)
+			sum += count[s] * state.offerArray[s % levels];
+		return sum;
+	}
+
+	public double currentOfferSum() {
+		return offerSum();
+	}
+
+	public void addStrategies(IntBag strategies, int levels) {
+		for(int s=0;s<count.length;s++) {
+			for(int k=0;k<count[s];k++)
+				strategies.add(s);
+		}
+	}
+
+	public void countStrategies(double[] offerFrequency, double[] acceptFrequency) {
+		for(int s=0;s<count.length;s++) {
+			offerFrequency[s / levels] += count[s];
+			acceptFrequency[s % levels] += count[s];
+		}
+	}
+
+	public int countOffer(int offerIndex) {
+		int k = 0;
+		for(int a=0;a<levels;a++)
+			k += count[offerIndex * levels + a];
+		return k;
+	}
+
+	public void countCurrentOffers(double[] offerCounts, double[] acceptCounts) {
+		countStrategies(offerCounts, acceptCounts);//members offer their strategy's offer
+	}
+
+	/**
+	 * Members that have reached their maximum age die.
+	 * @param state
+	 */
+	void deaths(Environment state) {
+		final long tick = (long)state.schedule.getTime();
+		if(n == 0 || due[0] / count.length > tick)
+			return;
+		while(n > 0 && due[0] / count.length <= tick) {
+			died[(int)(due[0] % count.length)]++;
+			pop();
+			n--;
+		}
+		for(int s=0;s<count.length;s++) {
+			final int k = died[s];
+			if(k == 0)
+				continue;
+			final double share = (double)k / count[s];//of the pooled values that die with them
+			state.experimenter.recordDeaths(s / levels, s % levels, k, offspring[s] / count[s]);
+			pooled[s] -= share * pooled[s];
+			ready[s] -= share * ready[s];
+			offspring[s] -= share * offspring[s];
+			count[s] -= k;
+			state.population -= k;
+			died[s] = 0;
+		}
+		version++;
+	}
+
+	/**
+	 * One round of the ultimatum game with the pairings and random draws of Group.ug,
+	 * crediting the pooled resources of each strategy.
+	 * @param state
+	 */
+	void play(Environment state) {
+		if(n < 2)
+			return;
+		if(state.playMode == EXPECTED) {
+			expectedPlay(state);
+			return;
+		}
+		if(state.playMode == COALITIONS) {
+			final NPersonGame game = state.coalitions;
+			game.clear(n);
+			for(int s=0;s<count.length;s++) {
+				for(int k=0;k<count[s];k++)
+					game.add(s / levels, s % levels);
+			}
+			game.play(state);
+			int i = 0;
+			for(int s=0;s<count.length;s++) {
+				for(int k=0;k<count[s];k++)
+					pooled[s] += game.gain[i++];
+			}
+			return;
+		}
+		players.clear();
+		for(int s=0;s<count.length;s++) {
+			for(int k=0;k<count[s];k++)
+				players.add(s);
+		}
+		players.shuffle(state.random);
+		final int half = n / 2;
+		int proposers, responders, np, nr;//first positions and numbers of proposers and responders
+		if(state.random.nextBoolean(0.5)) {
+			proposers = 0; np = half;
+			responders = half; nr = n - half;
+		}
+		else {
+			responders = 0; nr = half;
+			proposers = half; np = n - half;
+		}
+		final int[] x = players.objs;
+		final double[] keep = state.keepFraction;
+		final double[] give = state.giveFraction;
+		final int m = Math.min(np, nr);
+		if(state.ugKernel) {
+			final UgKernel kernel = state.kernel;
+			kernel.clear(m);
+			for(int i=0;i<m;i++)
+				kernel.add(x[proposers + i] / levels, x[responders + i] % levels);
+			kernel.play(state);
+			for(int i=0;i<m;i++) {
+				pooled[x[proposers + i]] += kernel.proposerGain[i];
+				pooled[x[responders + i]] += kernel.responderGain[i];
+			}
+		}
+		else {
+			for(int i=0;i<m;i++) {
+				final int p = x[proposers + i];
+				final int r = x[responders + i];
+				if(p / levels >= r % levels) {
+					final double endowment = state.tnormal.nextTN();
+					pooled[p] += keep[p / levels] * endowment;
+					pooled[r] += give[p / levels] * endowment;
+				}
+			}
+		}
+		if(np > nr) {//half game with a random responder
+			final int p = x[proposers + nr];
+			final int r = x[responders + state.random.nextInt(nr)];
+			if(p / levels >= r % levels)
+				pooled[p] += keep[p / levels] * state.tnormal.nextTN();
+		}
+		else if(np < nr) {//the odd responder plays a random proposer
+			final int p = x[proposers + state.random.nextInt(np)];
+			final int r = x[responders + nr - 1];
+			if(p / levels >= r % levels)
+				pooled[r] += give[p / levels] * state.tnormal.nextTN();
+		}
+	}
+
+	/**
+	 * Expected payoff mode: the members of each strategy gain what they expect from a round
+	 * of play, as in Group.expectedPlay.
+	 * @param state
+	 */
+	void expectedPlay(Environment state) {
+		final double e1 = state.tnormal.mean();
+		final double[] give = state.giveFraction;
+		final double[] keep = state.keepFraction;
+		clearLevels(levels);//the level buffers of Group
+		for(int s=0;s<count.length;s++) {
+			offerCounts[s / levels] += count[s];
+			acceptCounts[s % levels] += count[s];
+		}
+		levelSums(state, offerCounts, acceptCounts, acceptedBy, givenTo, givenSqTo);
+		for(int s=0;s<count.length;s++) {
+			if(count[s] == 0)
+				continue;
+			final int o = s / levels;
+			final int a = s % levels;
+			final boolean self = o >= a;
+			final double accepted = acceptedBy[o] - (self ? 1 : 0);
+			final double given = givenTo[a] - (self ? give[o] : 0);
+			pooled[s] += count[s] * 0.5 * e1 * (keep[o] * accepted + given) / (n - 1);
+		}
+	}
+
+	/**
+	 * Adds a birth for each member of a strategy that has the pooled resources and a
+	 * completed IBI to reproduce.
+	 * @param state
+	 * @param parents group of each birth
+	 * @param strategies strategy of the parent of each birth
+	 */
+	void births(Environment state, Bag parents, IntBag strategies) {
+		for(int s=0;s<count.length;s++) {
+			if(count[s] == 0)
+				continue;
+			double k = pooled[s] / state.io;
+			if(state.ibi) {
+				ready[s] = Math.min(ready[s] + count[s] / state.ibiTau, count[s]);
+				k = Math.min(k, ready[s]);
+			}
+			for(int b=(int)k;b>0;b--) {
+				parents.add(this);
+				strategies.add(s);
+			}
+		}
+	}
+
+	/**
+	 * A member with strategy s reproduces, if the population is below maxN.  Otherwise it
+	 * loses the resources for reproduction, as agents do.
+	 * @param state
+	 * @param s
+	 */
+	void reproduce(Environment state, int s) {
+		if(state.ibi)
+			ready[s]--;
+		final double cost = state.carryOver ? state.io : Math.max(state.io, pooled[s] / count[s]);
+		pooled[s] = Math.max(0.0, pooled[s] - cost);
+		if(state.maxN <= state.population)
+			return;
+		StrategyCountGroup g = this;
+		boolean dispersed = false;
+		if(state.dispersal.next(state.random, state.dispersalRate)) {
+			StrategyCountGroup local = findGroupLocal(state, state.dispersalRadius);
+			if(local != null) {
+				g = local;
+				dispersed = true;
+			}
+		}
+		int offer = s / levels;
+		int accept = s % levels;
+		if(state.sex && n > 1 && state.mating != Mating.SELF) {//recombine with the strategy of a mate, as Agent.chromosome does
+			final int mate = state.mates.mateStrategy(state.random, this, s);
+			if(state.random.nextBoolean(0.5))
+				accept = mate % levels;
+			else
+				offer = mate / levels;
+		}
+		if(state.mutation.next(state.random, state.mutationRate))
+			accept = state.random.nextInt(levels);
+		if(state.mutation.next(state.random, state.mutationRate))
+			offer = state.random.nextInt(levels);
+		state.experimenter.recordDispersion(dispersed);
+		offspring[s]++;
+		g.add(state, offer * levels + accept, false);
+		state.population++;
+	}
+
+	/**
+	 * A random non-empty group within radius, or null.
+	 * @param state
+	 * @param radius
+	 * @return
+	 */
+	StrategyCountGroup findGroupLocal(Environment state, int radius) {
+		Bag groups = state.neighborhood.neighbors(x, y, radius, false);
+		int nonEmpty = 0;//kept at the front of the scratch bag
+		for(int i=0;i<groups.numObjs;i++) {
+			StrategyCountGroup g = (StrategyCountGroup)groups.objs[i];
+			if(g.n > 0 && g != this)
+				groups.objs[nonEmpty++] = g;
+		}
+		if(nonEmpty == 0)
+			return null;
+		return (StrategyCountGroup)groups.objs[state.random.nextInt(nonEmpty)];
+	}
+
+	/**
+	 * The nearest non-empty group, searching with increasing radius, or null if there is
+	 * no other group.
+	 * @param state
+	 * @return
+	 */
+	StrategyCountGroup findGroupNearest(Environment state) {
+		if(state.sparseSpace.getAllObjects().numObjs < 2)
+			return null;
+		final int maxRadius = Math.max(state.gridWidth, state.gridHeight);
+		for(int radius=1;radius<=maxRadius;radius++) {
+			Bag groups = state.neighborhood.neighbors(x, y, radius, false);
+			groups.shuffle(state.random);
+			for(int i=0;i<groups.numObjs;i++) {
+				StrategyCountGroup g = (StrategyCountGroup)groups.objs[i];
+				if(g.n > 0 && g != this)
+					return g;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * A random empty location for an offspring group, anywhere with probability
+	 * globalGroupDispersion, otherwise within groupRadius. Null if there is none.
+	 * @param state
+	 * @return
+	 */
+	Int2D fissionLocation(Environment state) {
+		if(state.globalDispersal.next(state.random, state.globalGroupDispersion)) {
+			for(int test=0;test<1000;test++) {
+				int x = state.random.nextInt(state.gridWidth);
+				int y = state.random.nextInt(state.gridHeight);
+				if(state.neighborhood.objectsAt(x, y) == null)
+					return new Int2D(x, y);
+			}
+			return null;
+		}
+		state.neighborhood.locations(x, y, state.groupRadius, false);
+		IntBag empty = state.neighborhood.emptyCells();
+		if(empty.numObjs == 0)
+			return null;
+		final int cell = empty.objs[state.random.nextInt(empty.numObjs)];
+		return new Int2D(cell / state.gridHeight, cell % state.gridHeight);
+	}
+
+	/**
+	 * If the group is larger than maxGroupSize, each member moves to an offspring group
+	 * with probability 0.5, until both groups are larger than minGroupSize.
+	 * @param state
+	 */
+	void fission(Environment state) {
+		if(n <= state.maxGroupSize)
+			return;
+		Int2D xy = fissionLocation(state);
+		if(xy == null)
+			return;
+		StrategyCountGroup g = new StrategyCountGroup(state, xy.x, xy.y);
+		int[] moved = new int[count.length];
+		long[] kept = new long[n];
+		long[] leaving = new long[n];
+		int m, k;
+		do {//the members move as in Agent.groupFission, where a member moved to the end is passed over
+			m = 0;
+			k = n;
+			Arrays.fill(moved, 0);
+			System.arraycopy(due, 0, kept, 0, n);
+			for(int i=0;i<k;i++) {
+				if(state.random.nextBoolean(0.5)) {
+					leaving[m++] = kept[i];
+					moved[(int)(kept[i] % count.length)]++;
+					kept[i] = kept[--k];
+				}
+			}
+		} while(m <= state.minGroupSize || k <= state.minGroupSize);
+		for(int s=0;s<count.length;s++) {
+			if(moved[s] == 0)
+				continue;
+			final double share = (double)moved[s] / count[s];
+			g.pooled[s] = share * pooled[s];
+			g.ready[s] = share * ready[s];
+			g.offspring[s] = share * offspring[s];
+			pooled[s] -= g.pooled[s];
+			ready[s] -= g.ready[s];
+			offspring[s] -= g.offspring[s];
+			count[s] -= moved[s];
+			g.count[s] = moved[s];
+		}
+		due = kept;
+		g.due = leaving;
+		n = k;
+		g.n = m;
+		heapify();
+		g.heapify();
+		version++;
+		if(!state.paramSweeps)
+			g.setColor();
+		g.event = state.schedule.scheduleRepeating(state.schedule.getTime()+1,1,g);//schdule after agents
+		state.sparseSpace.setObjectLocation(g, xy.x, xy.y);
+	}
+
+	public boolean die(Environment state) {
+		if(n == 0) {
+			state.sparseSpace.remove(this);
+			event.stop();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Members of a group that is too small join the nearest group.
+	 */
+	public void groupDisperse(Environment state) {
+		if(n < state.minGroupSize) {
+			StrategyCountGroup g = findGroupNearest(state);
+			if(g == null)
+				return;//nowhere to go
+			g.merge(this);
+			die(state);
+		}
+	}
+
+	/**
+	 * Step method for strategy count groups: a round of play.  The members die, reproduce
+	 * and fission in Members, which steps before the groups as agents do.
+	 */
+	public void step(SimState state) {
+		Environment eState = (Environment)state;
+		if(die(eState))
+			return;//if no members
+		groupDisperse(eState);//if too few
+		if(n == 0)
+			return;
+		play(eState);
+		if(eState.dynamicColorGroup && !eState.paramSweeps)
+			setColor();
+	}
+
+	/**
+	 * Steps the members of all strategy count groups, in place of the agents: deaths in
+	 * every group, then the births of all groups in random order, as agents step in random
+	 * order, so that the births that fill the population to maxN are not those of the
+	 * groups with the deaths.  Groups larger than maxGroupSize then fission.
+	 */
+	public static class Members implements Steppable {
+		private static final long serialVersionUID = 1L;
+		Bag parents = new Bag(); //group of each birth
+		IntBag strategies = new IntBag(); //strategy of the parent of each birth
+		IntBag order = new IntBag();
+
+		public void step(SimState state) {
+			Environment eState = (Environment)state;
+			Bag groups = new Bag(eState.sparseSpace.getAllObjects());
+			for(int i=0;i<groups.numObjs;i++)
+				((StrategyCountGroup)groups.objs[i]).deaths(eState);
+			parents.clear();
+			strategies.clear();
+			for(int i=0;i<groups.numObjs;i++)
+				((StrategyCountGroup)groups.objs[i]).births(eState, parents, strategies);
+			order.clear();
+			for(int i=0;i<parents.numObjs;i++)
+				order.add(i);
+			order.shuffle(eState.random);
+			for(int i=0;i<order.numObjs;i++) {
+				final int b = order.objs[i];
+				((StrategyCountGroup)parents.objs[b]).reproduce(eState, strategies.objs[b]);
+			}
+			parents.clear();
+			for(int i=0;i<groups.numObjs;i++)
+				((StrategyCountGroup)groups.objs[i]).fission(eState);
+		}
+	}
+}
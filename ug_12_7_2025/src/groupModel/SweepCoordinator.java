@@ -0,0 +1,652 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+import sweep.LoadSimulation;
+
+/**
+ * Coordinator for running the parameter sweep of a script file on several worker JVMs.
+ * The coordinator enumerates (parameter cell, replicate, seed) tasks and hands them out
+ * over localhost sockets to SweepWorkers, which run headless Environments and return
+ * the data rows. Tasks whose worker fails, disconnects or times out are handed out again
+ * up to a maximum number of attempts. Results are written in task order, so the results
+ * file does not depend on which worker ran what or when.
+ *
+ * All parameters with more than one value are swept (see DesignSpace). Tasks are made
+ * from the design when workers claim them, and at most maxAhead tasks are handed out
+ * beyond the first unwritten one, so memory does not grow with the size of the sweep.
+ *
+ * With -screen k, every cell is first solved by MeanFieldSolver and only the k cells with
+ * the most distinct fixed points are run.  Solving takes about 1.2 ms per cell on each
+ * core, so screening a design of a million cells takes minutes even on many cores.
+ *
+ * With -cache dir, the rows of each task are kept in a ResultCache, and tasks whose runs
+ * are in the cache are written from it instead of being handed out.  -cachesize bounds
+ * the cache in megabytes (1024 by default).
+ *
+ * With -minreps m, replicates are allocated adaptively: every cell first gets m
+ * replicates, and then, in rounds, cells whose 95% confidence interval for mean offer,
+ * mean accept or rejection rate (each the mean of its column over the rows of a run) is
+ * wider than +/-ci get more replicates, as many as the interval says they need but at most
+ * as many as they have, until no cell needs more or has -maxreps.  A round starts when
+ * the tasks before it are written, so which cells get more replicates, and the results
+ * file, do not depend on the workers.  The replicates and intervals of each cell are
+ * written to the -report file.
+ *
+ * Usage: java groupModel.SweepCoordinator -script script.txt -out sweep.txt [-port 5000]
+ * [-design factorial|lhs|sobol] [-samples n] [-reps n] [-seed s] [-localworkers k] [-attempts 3]
+ * [-timeout minutes] [-runfile runTimeFile.txt] [-precision 6] [-screen k] [-cache dir] [-cachesize MB]
+ * [-minreps m] [-maxreps n] [-ci 0.01] [-report replicates.txt]
+ */
+public class SweepCoordinator {
+	ArrayList<ArrayList<Object>> fixed = new ArrayList<ArrayList<Object>>(); //fixed parameters of the script
+	DesignSpace design; //cells of the sweep
+	long cells = 1; //number of parameter cells
+	long[] screened = null; //design cells kept by screening, null if every cell is run
+	int reps = 1; //replicates per cell
+	long baseSeed;
+	int maxAttempts = 3; //number of times a task is tried before it is given up
+	int timeout = 0; //milliseconds a worker may take for a task, 0 waits forever
+	long maxAhead = 10000; //maximum number of tasks handed out beyond the next one to write
+	long totalTasks;
+	long nextId = 0; //id of the next task to create
+	long nextToWrite = 0; //id of the next task to write to the results file
+	ArrayDeque<SweepTask> pending = new ArrayDeque<SweepTask>(); //tasks to be tried again
+	TreeMap<Long, ArrayList<double[]>> finished = new TreeMap<Long, ArrayList<double[]>>(); //finished but not yet written
+	PrintWriter results;
+	String precision = "%.6f";
+	int failed = 0;
+	ResultCache cache = null; //runs of earlier sweeps, null to run every task
+	long cached = 0; //number of tasks written from the cache
+	static final int[] STATISTICS = {2, 5, 8}; //columns of mean offer, mean accept and rejection rate in the rows of a run
+	static final String[] STATISTIC_NAMES = {"MeanO", "MeanA", "reject"};
+	int[] cellReps = null; //replicates of each cell so far, null if the precision of cells is not kept
+	int[] cellDone; //replicates of each cell with results
+	double[][] sum; //[statistic][cell]: sum over the replicates of the cell
+	double[][] sumSquares;
+	int maxReps; //most replicates of a cell
+	double target = 0; //half width of the confidence intervals wanted
+	long firstRound; //number of tasks of the first round, later tasks are in extraCell and extraRep
+	long[] extraCell = new long[0]; //cell of each task of later rounds
+	int[] extraRep = new int[0];
+	int rounds = 1;
+
+	public SweepCoordinator(String scriptName, String designType, long samples, int reps, long baseSeed) throws IOException {
+		super();
+		ArrayList<ArrayList<Object>> table = LoadSimulation.convertValues(LoadSimulation.clean(LoadSimulation.tokenize(this, scriptName)));
+		design = DesignSpace.make(designType, DesignSpace.split(table, fixed), samples, baseSeed);
+		cells = design.size();
+		if(reps > 0)
+			this.reps = reps;
+		else {
+			for(int i=0;i<fixed.size();i++) {//use simNumber from the script
+				if(fixed.get(i).get(2).equals("simNumber"))
+					this.reps = (Integer)fixed.get(i).get(3);
+			}
+		}
+		this.baseSeed = baseSeed;
+		totalTasks = Math.multiplyExact(cells, (long)this.reps);
+		checkParameters();
+	}
+
+	/**
+	 * Lists the parameters of the script that are not in the Environment, which runs skip.
+	 * A swept parameter that is not in the Environment (misspelled, say) would make every
+	 * cell run the same simulation.
+	 */
+	void checkParameters() {
+		StringBuilder skipped = new StringBuilder();
+		for(int i=0;i<fixed.size();i++) {
+			String name = (String)fixed.get(i).get(2);
+			if(!HeadlessRun.isParameter(name))
+				skipped.append(' ').append(name);
+		}
+		if(skipped.length() > 0)
+			System.out.println("Warning: parameters not in the Environment are skipped:"+skipped);
+		StringBuilder swept = new StringBuilder();
+		for(int i=0;i<design.dimensions();i++) {
+			if(!HeadlessRun.isParameter(design.name(i)))
+				swept.append(' ').append(design.name(i));
+		}
+		if(swept.length() > 0)
+			System.out.println("Warning: swept parameters not in the Environment, their cells run the same simulations:"+swept);
+	}
+
+	/**
+	 * Keeps only k cells of the design, chosen by MeanFieldSolver.screen from their
+	 * mean-field fixed points.  Cells keep their numbers, and so their seeds.
+	 * @param k
+	 * @param threads
+	 */
+	public void screen(int k, int threads) {
+		screened = MeanFieldSolver.screen(fixed, design, k, threads);
+		cells = screened.length;
+		totalTasks = Math.multiplyExact(cells, (long)reps);
+	}
+
+	/**
+	 * The cell of the design of the i-th cell of the sweep.
+	 * @param i
+	 * @return
+	 */
+	long designCell(long i) {
+		return screened == null ? i : screened[(int)i];
+	}
+
+	/**
+	 * Keeps the precision of every cell, and if maxReps > minReps, allocates replicates
+	 * adaptively: minReps replicates of every cell, then more for cells whose confidence
+	 * intervals are wider than target, up to maxReps.
+	 * @param minReps
+	 * @param maxReps
+	 * @param target
+	 */
+	public void adapt(int minReps, int maxReps, double target) {
+		final int n = Math.toIntExact(cells);
+		reps = minReps;
+		this.maxReps = Math.max(minReps, maxReps);
+		this.target = target;
+		totalTasks = firstRound = Math.multiplyExact(cells, (long)reps);
+		cellReps = new int[n];
+		Arrays.fill(cellReps, reps);
+		cellDone = new int[n];
+		sum = new double[STATISTICS.length][n];
+		sumSquares = new double[STATISTICS.length][n];
+	}
+
+	/**
+	 * The cell of the sweep (not of the design) of a task.
+	 * @param id
+	 * @return
+	 */
+	long cellOf(long id) {
+		return id < firstRound || cellReps == null ? id / reps : extraCell[(int)(id - firstRound)];
+	}
+
+	int repOf(long id) {
+		return id < firstRound || cellReps == null ? (int)(id % reps) : extraRep[(int)(id - firstRound)];
+	}
+
+	/**
+	 * Adds the statistics of a run to those of its cell.  Rows before the burn in have 0 for
+	 * them, so the statistics of a run are those of its last row: the mean offer and accept
+	 * over the data collected since the burn in, and the rejection rate of the last sample.
+	 * @param i cell of the sweep
+	 * @param rows
+	 */
+	void record(int i, ArrayList<double[]> rows) {
+		if(rows.isEmpty())
+			return;
+		final double[] last = rows.get(rows.size() - 1);
+		for(int s=0;s<STATISTICS.length;s++) {
+			final double x = last[STATISTICS[s]];
+			sum[s][i] += x;
+			sumSquares[s][i] += x * x;
+		}
+		cellDone[i]++;
+	}
+
+	/**
+	 * Half width of the 95% confidence interval of a statistic of a cell, NaN with fewer
+	 * than two replicates.
+	 * @param s
+	 * @param i
+	 * @return
+	 */
+	double halfWidth(int s, int i) {
+		final int n = cellDone[i];
+		if(n < 2)
+			return Double.NaN;
+		final double mean = sum[s][i] / n;
+		final double var = Math.max(0, (sumSquares[s][i] - n * mean * mean) / (n - 1));
+		return t975(n - 1) * Math.sqrt(var / n);
+	}
+
+	static final double[] T975 = {12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+			2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+			2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042};
+
+	/**
+	 * 97.5% quantile of Student's t distribution, from the table up to 30 degrees of freedom
+	 * and the Cornish-Fisher expansion above.
+	 * @param df
+	 * @return
+	 */
+	static double t975(int df) {
+		if(df <= T975.length)
+			return T975[df - 1];
+		final double z = 1.959964, z3 = z * z * z, z5 = z3 * z * z;
+		return z + (z3 + z) / (4.0 * df) + (5 * z5 + 16 * z3 + 3 * z) / (96.0 * df * df);
+	}
+
+	/**
+	 * Starts a round of replicates for the cells whose confidence intervals are wider than
+	 * the target.  A cell of n replicates whose widest interval is w gets the
+	 * n (w / target)^2 replicates the interval says it needs, but at most n more and at
+	 * most maxReps in all.
+	 * @return number of tasks added
+	 */
+	long nextRound() {
+		long added = 0;
+		for(int i=0;i<cellReps.length;i++) {
+			final int n = cellReps[i];
+			double w = 0;
+			for(int s=0;s<STATISTICS.length;s++)
+				w = Math.max(w, halfWidth(s, i));
+			if(n >= maxReps || !(w > target))//NaN without results: more replicates would fail too
+				continue;
+			final double needed = Math.ceil(cellDone[i] * (w / target) * (w / target));
+			final int more = (int)Math.max(1, Math.min(needed - n, Math.min(n, maxReps - n)));
+			for(int r=n;r<n+more;r++) {
+				final int k = (int)(totalTasks + added - firstRound);
+				if(k == extraCell.length) {
+					extraCell = Arrays.copyOf(extraCell, Math.max(1024, 2 * k));
+					extraRep = Arrays.copyOf(extraRep, extraCell.length);
+				}
+				extraCell[k] = i;
+				extraRep[k] = r;
+				added++;
+			}
+			cellReps[i] += more;
+		}
+		if(added > 0) {
+			rounds++;
+			System.out.println("Round "+rounds+": "+added+" more replicates.");
+		}
+		totalTasks += added;
+		return added;
+	}
+
+	/**
+	 * Writes the replicates and the confidence intervals of every cell.
+	 * @param fileName
+	 * @throws IOException
+	 */
+	void writeReport(String fileName) throws IOException {
+		int met = 0;
+		try (PrintWriter out = new PrintWriter(new FileWriter(fileName))) {
+			StringBuilder b = new StringBuilder("cell");
+			for(int j=0;j<design.dimensions();j++)
+				b.append('\t').append(design.name(j));
+			b.append("\treps");
+			for(int s=0;s<STATISTICS.length;s++)
+				b.append('\t').append(STATISTIC_NAMES[s]).append("\t").append(STATISTIC_NAMES[s]).append("CI");
+			b.append("\tmet");
+			out.println(b.toString());
+			for(int i=0;i<cellReps.length;i++) {
+				final long cell = designCell(i);
+				b = new StringBuilder().append(cell);
+				for(int j=0;j<design.dimensions();j++)
+					b.append('\t').append(design.value(cell, j));
+				b.append('\t').append(cellDone[i]);
+				double w = 0;
+				for(int s=0;s<STATISTICS.length;s++) {
+					w = Math.max(w, halfWidth(s, i));
+					b.append('\t').append(String.format(precision, cellDone[i] > 0 ? sum[s][i] / cellDone[i] : Double.NaN));
+					b.append('\t').append(String.format(precision, halfWidth(s, i)));
+				}
+				final boolean ok = w <= target;
+				if(ok)
+					met++;
+				b.append('\t').append(ok ? 1 : 0);
+				out.println(b.toString());
+			}
+		}
+		System.out.println(met+" of "+cellReps.length+" cells have confidence intervals within +/-"+target+", in "+rounds+" rounds.");
+	}
+
+	/**
+	 * Makes the next task of the sweep.
+	 * @return
+	 */
+	SweepTask newTask() {
+		long cell = designCell(cellOf(nextId));
+		int rep = repOf(nextId);
+		SweepTask task = new SweepTask(nextId, cell, rep, SweepTask.seed(baseSeed, cell, rep), design.cell(cell));
+		nextId++;
+		return task;
+	}
+
+	/**
+	 * Writes the next tasks from the cache until a task is not in the cache, which is
+	 * kept to be handed out.
+	 */
+	public synchronized void readCache() {
+		while(cache != null && pending.isEmpty() && nextId < totalTasks && nextId - nextToWrite < maxAhead) {
+			SweepTask task = newTask();
+			task.key = ResultCache.key(fixed, task.parameters, task.seed);
+			ArrayList<double[]> rows = cache.get(task.key);
+			if(rows == null)
+				pending.add(task);
+			else {
+				cached++;
+				finished.put(task.id, rows);
+				writeFinished();
+			}
+		}
+	}
+
+	/**
+	 * Hands out the next task: a task to be tried again, or a new one. Returns null if
+	 * there are no tasks to hand out at present.
+	 * @return
+	 */
+	public synchronized SweepTask claim() {
+		readCache();
+		SweepTask task = pending.poll();
+		if(task == null && nextId < totalTasks && nextId - nextToWrite < maxAhead)
+			task = newTask();
+		if(task != null)
+			task.attempts++;
+		return task;
+	}
+
+	/**
+	 * Records the rows of a finished task and writes all tasks that are now in order.
+	 * @param task
+	 * @param rows
+	 */
+	public synchronized void complete(SweepTask task, ArrayList<double[]> rows) {
+		if(task.id < nextToWrite || finished.containsKey(task.id))
+			return;//a task that timed out may still be returned by its first worker
+		finished.put(task.id, rows);
+		if(cache != null && task.key != null)
+			cache.put(task.key, rows);
+		writeFinished();
+	}
+
+	/**
+	 * A task failed or was lost with its worker. It is tried again unless it has reached
+	 * the maximum number of attempts.
+	 * @param task
+	 * @param why
+	 */
+	public synchronized void fail(SweepTask task, String why) {
+		if(task.id < nextToWrite || finished.containsKey(task.id))
+			return;
+		if(task.attempts < maxAttempts) {
+			System.out.println("Task "+task.id+" failed ("+why+"), trying again.");
+			pending.addFirst(task);
+		}
+		else {
+			System.out.println("Task "+task.id+" failed ("+why+") after "+task.attempts+" attempts, giving up.");
+			failed++;
+			finished.put(task.id, null);
+			writeFinished();
+		}
+	}
+
+	public synchronized boolean isDone() {
+		return nextToWrite >= totalTasks;
+	}
+
+	/**
+	 * Writes the header of the results file.
+	 * @param headers column headers of the data, may be null
+	 */
+	void writeHeader(String[] headers) {
+		StringBuilder b = new StringBuilder("task\tcell\trep\tseed");
+		for(int i=0;i<design.dimensions();i++)
+			b.append('\t').append(design.name(i));
+		b.append("\tstep");
+		if(headers != null) {
+			for(int i=0;i<headers.length;i++)
+				b.append('\t').append(headers[i]);
+		}
+		results.println(b.toString());
+		results.flush();
+	}
+
+	/**
+	 * Writes finished tasks in task order for as long as the next task is finished.
+	 */
+	void writeFinished() {
+		while(finished.containsKey(nextToWrite)) {
+			ArrayList<double[]> rows = finished.remove(nextToWrite);
+			if(rows != null) {
+				if(cellReps != null)
+					record((int)cellOf(nextToWrite), rows);
+				long cell = designCell(cellOf(nextToWrite));
+				int rep = repOf(nextToWrite);
+				String prefix = nextToWrite+"\t"+cell+"\t"+rep+"\t"+SweepTask.seed(baseSeed, cell, rep);
+				for(int i=0;i<design.dimensions();i++)
+					prefix += "\t"+design.value(cell, i);
+				for(int i=0;i<rows.size();i++) {
+					double[] row = rows.get(i);
+					StringBuilder b = new StringBuilder(prefix);
+					b.append('\t').append((long)row[0]);//step
+					for(int j=1;j<row.length;j++)
+						b.append('\t').append(String.format(precision, row[j]));
+					results.println(b.toString());
+				}
+			}
+			nextToWrite++;
+			if(nextToWrite == totalTasks && cellReps != null)
+				nextRound();
+		}
+		results.flush();
+	}
+
+	/**
+	 * Reads the column headers from a run time file.
+	 * @param runTimeFileName
+	 * @return
+	 * @throws IOException
+	 */
+	static String[] columnHeaders(String runTimeFileName) throws IOException {
+		for(String line : Files.readAllLines(Paths.get(runTimeFileName))) {
+			line = line.trim();
+			if(line.startsWith("ColumnHeaders:")) {
+				String s = line.substring("ColumnHeaders:".length());
+				int comment = s.indexOf("//");
+				if(comment >= 0)
+					s = s.substring(0, comment);
+				String[] headers = s.replace(";", "").split(",");
+				for(int i=0;i<headers.length;i++)
+					headers[i] = headers[i].trim();
+				return headers;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the rows of a result sent by a worker.
+	 * @param n number of rows
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	static ArrayList<double[]> readRows(int n, BufferedReader in) throws IOException {
+		ArrayList<double[]> rows = new ArrayList<double[]>(n);
+		for(int i=0;i<n;i++) {
+			String[] s = in.readLine().split("\t");
+			double[] row = new double[s.length];
+			for(int j=0;j<s.length;j++)
+				row[j] = Double.parseDouble(s[j]);
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	/**
+	 * Serves one worker connection. The task the worker holds is handed out again if
+	 * the connection is lost or the worker takes longer than the timeout.
+	 */
+	class Connection extends Thread {
+		Socket socket;
+
+		Connection(Socket socket) {
+			super("SweepCoordinator connection");
+			this.socket = socket;
+			setDaemon(true);
+		}
+
+		public void run() {
+			SweepTask task = null;
+			try {
+				socket.setSoTimeout(timeout);
+				BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+				PrintWriter out = new PrintWriter(socket.getOutputStream());
+				out.println("FIXED");
+				SweepTask.writeParameters(out, fixed);
+				out.flush();
+				String line;
+				while((line = in.readLine()) != null) {
+					if(line.startsWith("CLAIM")) {
+						task = claim();
+						if(task != null)
+							task.write(out);
+						else if(isDone())
+							out.println("DONE");
+						else
+							out.println("WAIT");//other workers hold the remaining tasks
+						out.flush();
+					}
+					else if(line.startsWith("RESULT")) {
+						String[] s = line.split(" ");
+						ArrayList<double[]> rows = readRows(Integer.parseInt(s[2]), in);
+						if(task != null && task.id == Long.parseLong(s[1]))
+							complete(task, rows);
+						task = null;
+						out.println("OK");
+						out.flush();
+					}
+					else if(line.startsWith("FAIL")) {
+						if(task != null)
+							fail(task, line.substring(4).trim());
+						task = null;
+						out.println("OK");
+						out.flush();
+					}
+				}
+			} catch (SocketTimeoutException e) {
+				if(task != null) fail(task, "timed out");
+				task = null;
+			} catch (IOException e) {
+				//connection lost, handled below
+			} finally {
+				if(task != null)
+					fail(task, "worker lost");
+				try {
+					socket.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Starts worker JVMs on this machine with the class path of the coordinator.
+	 * @param k
+	 * @param port
+	 * @return
+	 * @throws IOException
+	 */
+	static ArrayList<Process> startLocalWorkers(int k, int port) throws IOException {
+		ArrayList<Process> workers = new ArrayList<Process>(k);
+		String java = System.getProperty("java.home")+File.separator+"bin"+File.separator+"java";
+		for(int i=0;i<k;i++) {
+			ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+					"groupModel.SweepWorker", "-host", "localhost", "-port", ""+port);
+			pb.inheritIO();
+			workers.add(pb.start());
+		}
+		return workers;
+	}
+
+	/**
+	 * Accepts worker connections until all tasks are written.
+	 * @param server
+	 * @throws IOException
+	 */
+	public void serve(ServerSocket server) throws IOException {
+		server.setSoTimeout(1000);//check for the end of the sweep every second
+		while(!isDone()) {
+			readCache();//a sweep run before needs no workers
+			try {
+				new Connection(server.accept()).start();
+			} catch (SocketTimeoutException e) {
+				//no new worker
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		String script = GUI.argumentForKey("-script", args);
+		String design = GUI.argumentForKey("-design", args);
+		String samples = GUI.argumentForKey("-samples", args);
+		String out = GUI.argumentForKey("-out", args);
+		String port = GUI.argumentForKey("-port", args);
+		String reps = GUI.argumentForKey("-reps", args);
+		String seed = GUI.argumentForKey("-seed", args);
+		String local = GUI.argumentForKey("-localworkers", args);
+		String attempts = GUI.argumentForKey("-attempts", args);
+		String timeout = GUI.argumentForKey("-timeout", args);
+		String runFile = GUI.argumentForKey("-runfile", args);
+		String precision = GUI.argumentForKey("-precision", args);
+		String screen = GUI.argumentForKey("-screen", args);
+		String cache = GUI.argumentForKey("-cache", args);
+		String cacheSize = GUI.argumentForKey("-cachesize", args);
+		String minReps = GUI.argumentForKey("-minreps", args);
+		String maxReps = GUI.argumentForKey("-maxreps", args);
+		String ci = GUI.argumentForKey("-ci", args);
+		String report = GUI.argumentForKey("-report", args);
+
+		SweepCoordinator c = new SweepCoordinator(script == null ? "script.txt" : script, design,
+				samples == null ? 100 : Long.parseLong(samples), reps == null ? 0 : Integer.parseInt(reps),
+				seed == null ? System.currentTimeMillis() : Long.parseLong(seed));
+		if(attempts != null) c.maxAttempts = Integer.parseInt(attempts);
+		if(timeout != null) c.timeout = (int)(Double.parseDouble(timeout) * 60000);
+		if(precision != null) c.precision = "%."+Integer.parseInt(precision)+"f";
+		if(screen != null) c.screen(Integer.parseInt(screen), Runtime.getRuntime().availableProcessors());
+		if(minReps != null) {
+			final int m = Integer.parseInt(minReps);
+			c.adapt(m, maxReps == null ? 10 * m : Integer.parseInt(maxReps), ci == null ? 0.01 : Double.parseDouble(ci));
+			if(report == null)
+				report = "replicates.txt";
+		}
+		else if(report != null)
+			c.adapt(c.reps, c.reps, ci == null ? 0.01 : Double.parseDouble(ci));//report the precision of a fixed number of replicates
+		if(cache != null)
+			c.cache = new ResultCache(new File(cache), (long)((cacheSize == null ? 1024 : Double.parseDouble(cacheSize)) * 1048576));
+		c.results = new PrintWriter(new FileWriter(out == null ? "sweep.txt" : out));
+		c.writeHeader(runFile == null ? null : columnHeaders(runFile));
+		System.out.println("Sweep: "+c.cells+" cells x "+c.reps+" replicates = "+c.totalTasks+" tasks, base seed "+c.baseSeed);
+
+		ServerSocket server = new ServerSocket(port == null ? 5000 : Integer.parseInt(port));
+		System.out.println("Waiting for workers on port "+server.getLocalPort());
+		ArrayList<Process> workers = null;
+		if(local != null)
+			workers = startLocalWorkers(Integer.parseInt(local), server.getLocalPort());
+		c.serve(server);
+		server.close();
+		c.results.close();
+		if(workers != null) {
+			for(int i=0;i<workers.size();i++)
+				workers.get(i).waitFor();
+		}
+		if(report != null)
+			c.writeReport(report);
+		System.out.println("Sweep finished, "+c.totalTasks+" tasks, "+c.cached+" tasks from the cache, "+c.failed+" tasks failed.");
+	}
+}
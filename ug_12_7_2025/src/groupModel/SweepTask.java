@@ -0,0 +1,137 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+/**
+ * A single simulation of a parameter sweep: one parameter cell, one replicate and
+ * one seed.  Parameters are kept in the row form produced by sweep.LoadSimulation,
+ * {"public", type, name, value}, so they can be passed to sweep.SetParameters.  Tasks
+ * are sent between the coordinator and workers as plain text lines.
+ */
+public class SweepTask {
+	public long id; //position of the task in the results file
+	public long cell; //parameter cell of the sweep
+	public int rep; //replicate within the cell
+	public long seed; //seed for the simulation
+	public ArrayList<ArrayList<Object>> parameters; //parameter values of the cell
+	public int attempts = 0; //number of times the task has been handed to a worker
+	public String key = null; //key of the task in the ResultCache, null without a cache
+
+	public SweepTask(long id, long cell, int rep, long seed, ArrayList<ArrayList<Object>> parameters) {
+		super();
+		this.id = id;
+		this.cell = cell;
+		this.rep = rep;
+		this.seed = seed;
+		this.parameters = parameters;
+	}
+
+	/**
+	 * Seed for a replicate of a cell.  The seed depends only on the base seed, the cell, and
+	 * the replicate, so it does not depend on the order in which tasks are run.
+	 * @param base
+	 * @param cell
+	 * @param rep
+	 * @return
+	 */
+	public static long seed(long base, long cell, int rep) {
+		long z = base + 0x9E3779B97F4A7C15L * (cell * 1000003L + rep + 1);//splitmix64
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Makes a parameter row with a single value.
+	 * @param type
+	 * @param name
+	 * @param value
+	 * @return
+	 */
+	public static ArrayList<Object> parameter(String type, String name, Object value) {
+		ArrayList<Object> row = new ArrayList<Object>(4);
+		row.add("public");
+		row.add(type);
+		row.add(name);
+		row.add(value);
+		return row;
+	}
+
+	/**
+	 * Converts the text of a value to the object type used by sweep.SetParameters.
+	 * @param type
+	 * @param text
+	 * @return
+	 */
+	public static Object value(String type, String text) {
+		switch(type) {
+		case "int": return Integer.valueOf((int)Double.parseDouble(text));
+		case "long": return Long.valueOf((long)Double.parseDouble(text));
+		case "short": return Short.valueOf((short)Double.parseDouble(text));
+		case "float": return Float.valueOf(text);
+		case "double": return Double.valueOf(text);
+		case "boolean": return Boolean.valueOf(text);
+		default: return text;
+		}
+	}
+
+	/**
+	 * Writes parameter rows as a count followed by one "type name value" line per parameter.
+	 * @param out
+	 * @param parameters
+	 */
+	public static void writeParameters(PrintWriter out, ArrayList<ArrayList<Object>> parameters) {
+		out.println(parameters.size());
+		for(int i=0;i<parameters.size();i++) {
+			ArrayList<Object> row = parameters.get(i);
+			out.println(row.get(1)+" "+row.get(2)+" "+row.get(3));
+		}
+	}
+
+	/**
+	 * Reads parameter rows written by writeParameters.
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static ArrayList<ArrayList<Object>> readParameters(BufferedReader in) throws IOException {
+		int n = Integer.parseInt(in.readLine().trim());
+		ArrayList<ArrayList<Object>> parameters = new ArrayList<ArrayList<Object>>(n);
+		for(int i=0;i<n;i++) {
+			String[] s = in.readLine().trim().split(" ", 3);
+			parameters.add(parameter(s[0], s[1], value(s[0], s[2])));
+		}
+		return parameters;
+	}
+
+	/**
+	 * Sends the task, "TASK id cell rep seed" followed by its parameters.
+	 * @param out
+	 */
+	public void write(PrintWriter out) {
+		out.println("TASK "+id+" "+cell+" "+rep+" "+seed);
+		writeParameters(out, parameters);
+		out.flush();
+	}
+
+	/**
+	 * Reads a task from its header line and the parameters that follow.
+	 * @param header
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static SweepTask read(String header, BufferedReader in) throws IOException {
+		String[] s = header.trim().split(" ");
+		return new SweepTask(Long.parseLong(s[1]), Long.parseLong(s[2]), Integer.parseInt(s[3]),
+				Long.parseLong(s[4]), readParameters(in));
+	}
+}
@@ -0,0 +1,93 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+
+/**
+ * Worker for a SweepCoordinator. A worker connects to the coordinator, claims tasks,
+ * runs each of them as a headless simulation and returns the data rows, until the
+ * coordinator has no tasks left.
+ *
+ * Usage: java groupModel.SweepWorker [-host localhost] [-port 5000]
+ */
+public class SweepWorker {
+
+	/**
+	 * Sends the rows of a task, "RESULT id n" followed by n tab separated rows.
+	 * @param out
+	 * @param task
+	 * @param rows
+	 */
+	static void writeRows(PrintWriter out, SweepTask task, ArrayList<double[]> rows) {
+		out.println("RESULT "+task.id+" "+rows.size());
+		for(int i=0;i<rows.size();i++) {
+			double[] row = rows.get(i);
+			StringBuilder b = new StringBuilder();
+			for(int j=0;j<row.length;j++) {
+				if(j > 0) b.append('\t');
+				b.append(row[j]);
+			}
+			out.println(b.toString());
+		}
+		out.flush();
+	}
+
+	/**
+	 * Claims and runs tasks until the coordinator is done.
+	 * @param host
+	 * @param port
+	 * @return number of tasks run
+	 * @throws IOException
+	 */
+	public static int work(String host, int port) throws IOException {
+		int n = 0;
+		try (Socket socket = new Socket(host, port)) {
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			PrintWriter out = new PrintWriter(socket.getOutputStream());
+			in.readLine();//FIXED
+			ArrayList<ArrayList<Object>> fixed = SweepTask.readParameters(in);
+			while(true) {
+				out.println("CLAIM");
+				out.flush();
+				String line = in.readLine();
+				if(line == null || line.startsWith("DONE"))
+					break;
+				if(line.startsWith("WAIT")) {
+					try {
+						Thread.sleep(1000);
+					} catch (InterruptedException e) {
+						break;
+					}
+					continue;
+				}
+				SweepTask task = SweepTask.read(line, in);
+				try {
+					writeRows(out, task, HeadlessRun.run(fixed, task.parameters, task.seed));
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+					out.println("FAIL "+task.id+" "+e);
+					out.flush();
+				}
+				in.readLine();//OK
+				n++;
+			}
+		}
+		return n;
+	}
+
+	public static void main(String[] args) throws IOException {
+		String host = GUI.argumentForKey("-host", args);
+		String port = GUI.argumentForKey("-port", args);
+		int n = work(host == null ? "localhost" : host, port == null ? 5000 : Integer.parseInt(port));
+		System.out.println("Worker finished after "+n+" tasks.");
+	}
+}
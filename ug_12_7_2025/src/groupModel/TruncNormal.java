@@ -1,8 +1,11 @@
 package groupModel;
 
+import java.io.Serializable;
+
 import ec.util.MersenneTwisterFast;
 
-public class TruncNormal {
+public class TruncNormal implements Serializable {
+	private static final long serialVersionUID = 1L;
 	MersenneTwisterFast random;
 	double mean;
 	double sd;
@@ -25,5 +28,44 @@ public class TruncNormal {
 		//System.out.println(number + "  "+mean+ "  "+sd +"  "+lower+" "+upper);
 		return number;
 	}
-	
+
+	/**
+	 * Mean of the truncated distribution.
+	 * @return
+	 */
+	public double mean() {
+		double a = (lower - mean) / sd, b = (upper - mean) / sd;
+		double z = cdf(b) - cdf(a);
+		return mean + sd * (pdf(a) - pdf(b)) / z;
+	}
+
+	/**
+	 * Second moment (mean of the square) of the truncated distribution.
+	 * @return
+	 */
+	public double secondMoment() {
+		double a = (lower - mean) / sd, b = (upper - mean) / sd;
+		double z = cdf(b) - cdf(a);
+		double m = (pdf(a) - pdf(b)) / z;
+		double variance = sd * sd * (1 + (a * pdf(a) - b * pdf(b)) / z - m * m);
+		double mu = mean + sd * m;
+		return variance + mu * mu;
+	}
+
+	static double pdf(double x) {
+		return Math.exp(-0.5 * x * x) / Math.sqrt(2 * Math.PI);
+	}
+
+	/**
+	 * Standard normal distribution function, from the error function approximation 7.1.26 of
+	 * Abramowitz and Stegun (absolute error below 1.5e-7).
+	 * @param x
+	 * @return
+	 */
+	static double cdf(double x) {
+		double z = Math.abs(x) / Math.sqrt(2);
+		double t = 1 / (1 + 0.3275911 * z);
+		double erf = 1 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741 + t * (-1.453152027 + t * 1.061405429)))) * Math.exp(-z * z);
+		return x >= 0 ? 0.5 * (1 + erf) : 0.5 * (1 - erf);
+	}
 }
@@ -0,0 +1,189 @@
+/*
+Copyright 2025 by Jeffrey C. Schank
+Licensed under the Academic Free License version 3.0
+See https://opensource.org/licenses/AFL-3.0 for more information
+ */
+package groupModel;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import sim.util.Bag;
+import sweep.LoadSimulation;
+
+/**
+ * Array kernel for the full games of a round of the ultimatum game.  The offer and accept
+ * indices of the pairs are kept in primitive arrays, and acceptance and payoffs are
+ * computed in loops without branches over all pairs, which the JIT compiler can compile to
+ * SIMD instructions.  Because the offer lattice is sorted, an offer is accepted when its
+ * index is at least the accept index.  Endowments are only drawn for accepted pairs, in
+ * pair order, so the kernel uses the random numbers Group.ug does and gives the same
+ * results.  One kernel is shared by the groups of an Environment.
+ */
+public class UgKernel implements Serializable {
+	private static final long serialVersionUID = 1L;
+	int pairs = 0; //number of pairs
+	int[] offer = new int[32]; //offer index of the proposer of each pair
+	int[] accept = new int[32]; //accept index of the responder of each pair
+	int[] accepted = new int[32]; //1 if the pair's offer is accepted, otherwise 0
+	double[] endowment = new double[32]; //endowment of each pair, 0 if rejected
+	double[] proposerGain = new double[32];
+	double[] responderGain = new double[32];
+
+	/**
+	 * Removes all pairs, keeping room for n pairs.
+	 * @param n
+	 */
+	public void clear(int n) {
+		pairs = 0;
+		if(offer.length < n) {
+			final int size = Math.max(n, 2 * offer.length);
+			offer = new int[size];
+			accept = new int[size];
+			accepted = new int[size];
+			endowment = new double[size];
+			proposerGain = new double[size];
+			responderGain = new double[size];
+		}
+	}
+
+	/**
+	 * Adds a pair, in the order the pairs play.
+	 * @param offerIndex of the proposer
+	 * @param acceptIndex of the responder
+	 */
+	public void add(int offerIndex, int acceptIndex) {
+		offer[pairs] = offerIndex;
+		accept[pairs] = acceptIndex;
+		pairs++;
+	}
+
+	/**
+	 * Plays the full games of all pairs: acceptance, endowments and the gains of both
+	 * players of each pair.
+	 * @param state
+	 */
+	public void play(Environment state) {
+		final int n = pairs;
+		final int[] o = offer, a = accept, acc = accepted;
+		for(int k=0;k<n;k++)
+			acc[k] = (a[k] - o[k] - 1) >>> 31;//1 if o[k] >= a[k]
+		final double[] e = endowment;
+		for(int k=0;k<n;k++)//the only scalar loop, the draws have to be in order
+			e[k] = acc[k] != 0 ? state.tnormal.nextTN() : 0.0;
+		final double[] keepFraction = state.keepFraction, giveFraction = state.giveFraction;
+		final double[] pg = proposerGain, rg = responderGain;
+		for(int k=0;k<n;k++) {
+			pg[k] = keepFraction[o[k]] * e[k];
+			rg[k] = giveFraction[o[k]] * e[k];
+		}
+	}
+
+	/**
+	 * Plays the round of a group of agents as Group.ug does.
+	 * @param g
+	 */
+	public void ug(Group g) {
+		final Environment state = g.state;
+		Bag players = new Bag(g.members);
+		players.shuffle(state.random);
+		final int half = players.numObjs / 2;
+		int proposers, responders, np, nr;//first positions and numbers of proposers and responders
+		if(state.random.nextBoolean(0.5)) {
+			proposers = 0; np = half;
+			responders = half; nr = players.numObjs - half;
+		}
+		else {
+			responders = 0; nr = half;
+			proposers = half; np = players.numObjs - half;
+		}
+		final Object[] x = players.objs;
+		final int m = Math.min(np, nr);
+		clear(m);
+		for(int k=0;k<m;k++)
+			add(((Agent)x[proposers + k]).offerIndex, ((Agent)x[responders + k]).acceptIndex);
+		play(state);
+		for(int k=0;k<m;k++) {
+			if(accepted[k] == 0)
+				continue;
+			Agent p = (Agent)x[proposers + k];
+			Agent r = (Agent)x[responders + k];
+			p.setEndowment(endowment[k]);
+			p.currentOffer = p.getOffer();
+			p.addResources(proposerGain[k]);
+			r.addResources(responderGain[k]);
+		}
+		if(np > nr) {//half game with a random responder
+			Agent p = (Agent)x[proposers + nr];
+			Agent r = (Agent)x[responders + state.random.nextInt(nr)];
+			if(p.offerIndex >= r.acceptIndex) {
+				final double endowment = p.getResourceTN(state);
+				p.currentOffer = p.getOffer();
+				p.addResources(state.keepFraction[p.offerIndex] * endowment);
+			}
+		}
+		else if(np < nr) {//the odd responder plays a random proposer
+			Agent p = (Agent)x[proposers + state.random.nextInt(np)];
+			Agent r = (Agent)x[responders + nr - 1];
+			if(p.offerIndex >= r.acceptIndex) {
+				final double endowment = p.getResourceTN(state);
+				r.addResources(state.giveFraction[p.offerIndex] * endowment);
+			}
+		}
+	}
+
+	/**
+	 * Times the rounds of play of the groups of a running simulation with Group.ug and with
+	 * the kernel, and checks that full runs of the script with and without the kernel give
+	 * the same data.
+	 */
+	public static void main(String[] args) throws Exception {
+		String script = GUI.argumentForKey("-script", args);
+		String steps = GUI.argumentForKey("-steps", args);
+		String rounds = GUI.argumentForKey("-rounds", args);
+		String seed = GUI.argumentForKey("-seed", args);
+		final long s = seed == null ? 1 : Long.parseLong(seed);
+		final int warm = steps == null ? 3000 : Integer.parseInt(steps);
+		final int r = rounds == null ? 2000 : Integer.parseInt(rounds);
+
+		ArrayList<ArrayList<Object>> table = LoadSimulation.convertValues(LoadSimulation.clean(
+				LoadSimulation.tokenize(new UgKernel(), script == null ? "script.txt" : script)));
+		ArrayList<ArrayList<Object>> fixed = new ArrayList<ArrayList<Object>>();
+		DesignSpace.split(table, fixed);//swept parameters are left at their defaults
+		Environment state = HeadlessRun.makeEnvironment(fixed, new ArrayList<ArrayList<Object>>(), s);
+		state.start();
+		for(int i=0;i<warm;i++)
+			state.schedule.step(state);
+		Bag groups = new Bag(state.sparseSpace.getAllObjects());
+		long players = 0;
+		for(int i=0;i<groups.numObjs;i++)
+			players += ((Group)groups.objs[i]).members.numObjs;
+		System.out.println(groups.numObjs+" groups, "+players+" agents after "+warm+" steps");
+		long scalar = 0, kernel = 0;
+		for(int pass=0;pass<4;pass++) {//the first passes warm up the JIT compiler
+			long t = System.nanoTime();
+			for(int k=0;k<r;k++)
+				for(int i=0;i<groups.numObjs;i++)
+					((Group)groups.objs[i]).ug();
+			scalar = System.nanoTime() - t;
+			t = System.nanoTime();
+			for(int k=0;k<r;k++)
+				for(int i=0;i<groups.numObjs;i++)
+					state.kernel.ug((Group)groups.objs[i]);
+			kernel = System.nanoTime() - t;
+		}
+		final double games = (double)r * players / 2;
+		System.out.println("Group.ug: "+String.format("%.1f", scalar / games)+" ns per game");
+		System.out.println("UgKernel: "+String.format("%.1f", kernel / games)+" ns per game");
+
+		ArrayList<ArrayList<Object>> on = new ArrayList<ArrayList<Object>>();
+		on.add(SweepTask.parameter("boolean", "ugKernel", Boolean.TRUE));
+		ArrayList<double[]> a = HeadlessRun.run(fixed, new ArrayList<ArrayList<Object>>(), s);
+		ArrayList<double[]> b = HeadlessRun.run(fixed, on, s);
+		boolean same = a.size() == b.size();
+		for(int i=0;same && i<a.size();i++)
+			same = Arrays.equals(a.get(i), b.get(i));
+		System.out.println(same ? "Runs with and without the kernel are identical" : "Runs with and without the kernel differ");
+	}
+}